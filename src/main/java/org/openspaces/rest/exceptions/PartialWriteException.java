@@ -0,0 +1,46 @@
+/*
+ * Copyright 2015 GigaSpaces Technologies Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at *
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License."
+ */
+package org.openspaces.rest.exceptions;
+
+import org.openspaces.rest.utils.ChunkResult;
+
+import java.util.List;
+
+/**
+ * This exception is used in cases when some of the chunks of a write request failed to be written to space.
+ * The other chunks were written, the result of each chunk is kept for the error response.
+ *
+ * @since 12.0
+ */
+public class PartialWriteException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+    private final List<ChunkResult> chunks;
+    private final int failedChunks;
+
+    public PartialWriteException(List<ChunkResult> chunks, int failedChunks) {
+        super(failedChunks + " of " + chunks.size() + " chunks failed to be written to space");
+        this.chunks = chunks;
+        this.failedChunks = failedChunks;
+    }
+
+    public List<ChunkResult> getChunks() {
+        return chunks;
+    }
+
+    public int getFailedChunks() {
+        return failedChunks;
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2015 GigaSpaces Technologies Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at *
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License."
+ */
+package org.openspaces.rest.exceptions;
+
+/**
+ * This exception is used in cases when an async pool already holds as many calls as it may run and queue
+ *
+ * @since 12.0
+ */
+public class ServerBusyException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+    private final String poolName;
+    private final int capacity;
+
+    public ServerBusyException(String poolName, int capacity) {
+        this.poolName = poolName;
+        this.capacity = capacity;
+    }
+
+    public String getPoolName() {
+        return poolName;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
@@ -19,35 +19,67 @@ package org.openspaces.rest.space;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
 import com.gigaspaces.annotation.pojo.FifoSupport;
+import com.gigaspaces.client.ChangeResult;
+import com.gigaspaces.client.ChangeSet;
+import com.gigaspaces.client.ClearModifiers;
 import com.gigaspaces.client.WriteModifiers;
 import com.gigaspaces.document.SpaceDocument;
 import com.gigaspaces.metadata.*;
 import com.gigaspaces.metadata.index.SpaceIndexType;
 import com.gigaspaces.query.IdQuery;
+import com.gigaspaces.query.IdsQuery;
+import com.gigaspaces.query.ISpaceQuery;
+import com.gigaspaces.query.aggregators.GroupByResult;
 import com.j_spaces.core.UnknownTypeException;
 import com.j_spaces.core.client.SQLQuery;
-import net.jini.core.lease.Lease;
 import org.jsondoc.core.annotation.*;
 import org.jsondoc.core.pojo.ApiVerb;
 import org.openspaces.core.GigaSpace;
+import org.openspaces.core.RemoteDataAccessException;
 import org.openspaces.core.space.CannotFindSpaceException;
+import org.openspaces.extensions.QueryExtension;
 import org.openspaces.rest.exceptions.*;
+import org.openspaces.rest.utils.AggregationSpec;
+import org.openspaces.rest.utils.AsyncPool;
+import org.openspaces.rest.utils.ChunkResult;
+import org.openspaces.rest.utils.CompressionFilter;
 import org.openspaces.rest.utils.ControllerUtils;
+import org.openspaces.rest.utils.CursorRegistry;
+import org.openspaces.rest.utils.DocumentsResponse;
 import org.openspaces.rest.utils.ErrorMessage;
 import org.openspaces.rest.utils.ErrorResponse;
 import org.openspaces.rest.utils.ExceptionMessage;
+import org.openspaces.rest.utils.NdjsonHttpMessageConverter;
+import org.openspaces.rest.utils.PrometheusHttpMessageConverter;
+import org.openspaces.rest.utils.RawJsonValue;
+import org.openspaces.rest.utils.RequestBodyStream;
+import org.openspaces.rest.utils.RequestMetrics;
+import org.openspaces.rest.utils.ResponseCache;
+import org.openspaces.rest.utils.SmileHttpMessageConverter;
+import org.openspaces.rest.utils.SpaceDocumentReader;
+import org.openspaces.rest.utils.TakeResponse;
+import org.openspaces.rest.utils.TypeDescriptorCache;
+import org.openspaces.rest.utils.WriteMode;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DataAccessException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.*;
-
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncTask;
+
+import javax.annotation.PreDestroy;
+import javax.servlet.http.HttpServletRequest;
 import java.io.IOException;
-import java.text.SimpleDateFormat;
+import java.io.InputStream;
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -74,6 +106,18 @@ import java.util.logging.Logger;
  * POST:
  * curl -XPOST -d '[{"id":"1", "data":"testdata", "data2":"common", "nestedData" : {"nestedKey1":"nestedValue1"}}, {"id":"2", "data":"testdata2", "data2":"common", "nestedData" : {"nestedKey2":"nestedValue2"}}, {"id":"3", "data":"testdata3", "data2":"common", "nestedData" : {"nestedKey3":"nestedValue3"}}]' http://localhost:8080/rest/data/Item
  * <p/>
+ * The handlers which call the space are asynchronous: the space selected by the request is resolved on the
+ * container thread, which is then released, and the space call runs on one of two pools: the calls on single
+ * entries or given ids run on a pool of async_point_pool_size threads, so they do not wait behind queries, counts,
+ * aggregations and posted bodies, which run on a pool of async_pool_size threads. Each pool queues at most
+ * async_point_queue_capacity or async_queue_capacity more calls, further requests are answered with 503.
+ * A request which is not completed within async_timeout milliseconds is timed out, except a POST, which runs
+ * until its body was read and written.
+ * <p/>
+ * Reads by id, by ids, by query and counts of the types listed in local_cache_types or local_views are served
+ * in process, by a local cache or a local view of the space. A local view only holds the entries which match
+ * the query of its type, so these reads only see them.
+ * <p/>
  * <p/>
  * The response is a json object:
  * On Sucess:
@@ -128,16 +172,159 @@ public class SpaceAPIController {
     @Value("${datetime_format}")
     public void setDatetimeFormat(String datetimeFormat) {
         logger.info("Using [" + datetimeFormat + "] as datetime format");
-        ControllerUtils.date_format = datetimeFormat;
-        ControllerUtils.simpleDateFormat = new SimpleDateFormat(datetimeFormat);
-        ControllerUtils.mapper = new ObjectMapper();
-        ControllerUtils.mapper.setDateFormat(ControllerUtils.simpleDateFormat);
-        ControllerUtils.mapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
+        ControllerUtils.configureDateFormat(datetimeFormat);
+    }
+
+    @Value("${cursor_timeout}")
+    public void setCursorTimeout(long cursorTimeoutSeconds) {
+        ControllerUtils.cursors.setTimeout(cursorTimeoutSeconds * 1000);
+    }
+
+    @Value("${max_open_cursors}")
+    public void setMaxOpenCursors(int maxOpenCursors) {
+        ControllerUtils.cursors.setMaxOpenCursors(maxOpenCursors);
+    }
+
+    @Value("${spaces}")
+    public void setSpaces(String spaces) {
+        ControllerUtils.xapCache.setSpaceNames(spaces);
+    }
+
+    @Value("${health_check_interval}")
+    public void setHealthCheckInterval(long healthCheckIntervalSeconds) {
+        ControllerUtils.xapCache.setHealthCheckInterval(healthCheckIntervalSeconds * 1000);
+    }
+
+    @Value("${local_cache_types}")
+    public void setLocalCacheTypes(String localCacheTypes) {
+        ControllerUtils.xapCache.setLocalCacheTypes(localCacheTypes);
+    }
+
+    @Value("${local_views}")
+    public void setLocalViews(String localViews) {
+        ControllerUtils.xapCache.setLocalViews(localViews);
+    }
+
+    @Value("${slow_operation_threshold}")
+    public void setSlowOperationThreshold(long slowOperationThreshold) {
+        ControllerUtils.slowOperations.setThreshold(slowOperationThreshold);
+    }
+
+    @Value("${slow_operation_log_size}")
+    public void setSlowOperationLogSize(int slowOperationLogSize) {
+        ControllerUtils.slowOperations.setCapacity(slowOperationLogSize);
+    }
+
+    @Value("${write_batch_size}")
+    public void setWriteBatchSize(int writeBatchSize) {
+        ControllerUtils.chunkedWriter.setChunkSize(writeBatchSize);
+    }
+
+    @Value("${write_chunks_in_flight}")
+    public void setWriteChunksInFlight(int writeChunksInFlight) {
+        ControllerUtils.chunkedWriter.setMaxChunksInFlight(writeChunksInFlight);
+    }
+
+    @Value("${write_pool_size}")
+    public void setWritePoolSize(int writePoolSize) {
+        ControllerUtils.chunkedWriter.setPoolSize(writePoolSize);
+    }
+
+    @Value("${count_pool_size}")
+    public void setCountPoolSize(int countPoolSize) {
+        ControllerUtils.partitionCounter.setPoolSize(countPoolSize);
+    }
+
+    @Value("${buffer_capacity}")
+    public void setBufferCapacity(int bufferCapacity) {
+        ControllerUtils.ingestionBuffer.setCapacity(bufferCapacity);
+    }
+
+    @Value("${buffer_flush_size}")
+    public void setBufferFlushSize(int bufferFlushSize) {
+        ControllerUtils.ingestionBuffer.setFlushSize(bufferFlushSize);
+    }
+
+    @Value("${buffer_flush_interval}")
+    public void setBufferFlushInterval(long bufferFlushIntervalMillis) {
+        ControllerUtils.ingestionBuffer.setFlushInterval(bufferFlushIntervalMillis);
+    }
+
+    @Value("${async_pool_size}")
+    public void setAsyncPoolSize(int asyncPoolSize) {
+        ControllerUtils.bulkPool.setPoolSize(asyncPoolSize);
+    }
+
+    @Value("${async_queue_capacity}")
+    public void setAsyncQueueCapacity(int asyncQueueCapacity) {
+        ControllerUtils.bulkPool.setQueueCapacity(asyncQueueCapacity);
+    }
+
+    @Value("${async_point_pool_size}")
+    public void setAsyncPointPoolSize(int asyncPointPoolSize) {
+        ControllerUtils.pointPool.setPoolSize(asyncPointPoolSize);
+    }
+
+    @Value("${async_point_queue_capacity}")
+    public void setAsyncPointQueueCapacity(int asyncPointQueueCapacity) {
+        ControllerUtils.pointPool.setQueueCapacity(asyncPointQueueCapacity);
+    }
+
+    @Value("${async_timeout}")
+    public void setAsyncTimeout(long asyncTimeoutMillis) {
+        ControllerUtils.asyncTimeout = asyncTimeoutMillis;
+    }
+
+    @Value("${response_cache_size}")
+    public void setResponseCacheSize(int responseCacheSize) {
+        ControllerUtils.responseCache.setMaxEntries(responseCacheSize);
+    }
+
+    @Value("${response_cache_ttl}")
+    public void setResponseCacheTtl(long responseCacheTtlSeconds) {
+        ControllerUtils.responseCache.setTtl(responseCacheTtlSeconds * 1000);
+    }
+
+    @Value("${compression_threshold}")
+    public void setCompressionThreshold(int compressionThresholdBytes) {
+        CompressionFilter.setThreshold(compressionThresholdBytes);
+    }
+
+    /**
+     * Writes the documents which are still in the ingestion buffer before the gateway goes down
+     */
+    @PreDestroy
+    public void destroy() {
+        ControllerUtils.ingestionBuffer.shutdown();
+        ControllerUtils.xapCache.shutdown();
+    }
+
+    @Value("${type_cache_ttl}")
+    public void setTypeCacheTtl(long typeCacheTtlSeconds) {
+        ControllerUtils.typeCache.setTtl(typeCacheTtlSeconds * 1000);
     }
 
     private static final String QUERY_PARAM = "query";
     private static final String MAX_PARAM = "max";
     private static final String SPACEID_PARAM = "spaceid";
+    private static final String CURSOR_PARAM = "cursor";
+    private static final String FIELDS_PARAM = "fields";
+    private static final String FIELDS_DESCRIPTION = "Comma separated list of the properties to return. All properties are returned by default";
+    private static final String AGGREGATIONS_PARAM = "aggregations";
+    private static final String GROUP_BY_PARAM = "groupBy";
+    private static final String PARTITIONS_PARAM = "partitions";
+    private static final String RETURN_DATA_PARAM = "returnData";
+    private static final String BATCH_SIZE_PARAM = "batchSize";
+    private static final String FORMAT_PARAM = "format";
+    private static final String ROUTING_PARAM = "routing";
+    private static final String ROUTING_DESCRIPTION = "The value of the routing property of the entries, sends the request to the partition which holds them instead of to all the partitions";
+    private static final String WRITE_MODE_PARAM = "mode";
+    private static final String WRITE_MODE_HEADER = "X-Write-Mode";
+    private static final String WRITE_MODE_DESCRIPTION = "sync (default) waits for the space to write the entries, oneway accepts the request once the entries were sent, buffered accepts the request once the entries were queued in the ingestion buffer. Can also be set with the X-Write-Mode header";
+    private static final String NEW_CURSOR = "*";
+    private static final int DEFAULT_PAGE_SIZE = 1000;
+    /** The timeout of a request which never times out, for the servlet container */
+    private static final long NO_TIMEOUT = 0;
 
     private static int maxReturnValues = Integer.MAX_VALUE;
     private static final Logger logger = Logger.getLogger(SpaceAPIController.class.getName());
@@ -173,6 +360,7 @@ public class SpaceAPIController {
             SpaceTypeDescriptor spaceTypeDescriptor = new SpaceTypeDescriptorBuilder(type).idProperty(spaceID)
                     .routingProperty(spaceID).supportsDynamicProperties(true).create();
             gigaSpace.getTypeManager().registerTypeDescriptor(spaceTypeDescriptor);
+            ControllerUtils.typeCache.invalidate(gigaSpace, type);
             result.put("status", "success");
         } catch (IllegalStateException e) {
             throw new RestException(e.getMessage());
@@ -527,6 +715,7 @@ public class SpaceAPIController {
             }
 
             gigaSpace.getTypeManager().registerTypeDescriptor(spaceTypeDescriptor.create());
+            ControllerUtils.typeCache.invalidate(gigaSpace, type);
 
             HashMap<String, Object> result = new HashMap<String, Object>();
             result.put("status", "success");
@@ -541,56 +730,179 @@ public class SpaceAPIController {
 
     /**
      * REST GET by query request handler
+     * <p/>
+     * When the cursor parameter is provided the entries are read page by page through a space iterator:
+     * cursor=* opens a new cursor over the query, and the cursor returned in the response resumes it. The type,
+     * query, fields and routing of the request which resumes a cursor, and its space, must be the ones the cursor
+     * was opened with, otherwise the response is 400. The page size may change from page to page.
+     * With Accept: application/x-ndjson the entries are written one per line, and the cursor is returned in
+     * the X-Cursor header.
+     * <p/>
+     * Reads without a cursor are served from the response cache when it is enabled, see response_cache_size.
      *
      * @param type
      * @param query
      * @return
-     * @throws ObjectNotFoundException
+     * @throws ObjectNotFoundException if the requested cursor does not exist or has expired
+     * @throws CursorMismatchException if the requested cursor was opened by another query
      */
     @ApiMethod(
             path = "{type}/",
             verb = ApiVerb.GET,
-            description = "Read multiple entries from space that matches the query."
-            , produces = {MediaType.APPLICATION_JSON_VALUE}
+            description = "Read multiple entries from space that matches the query. Use cursor=* to read the entries page by page"
+            , produces = {MediaType.APPLICATION_JSON_VALUE, NdjsonHttpMessageConverter.APPLICATION_NDJSON_VALUE, SmileHttpMessageConverter.APPLICATION_SMILE_VALUE}
     )
-    @RequestMapping(value = "/{type}", method = RequestMethod.GET, produces = {MediaType.APPLICATION_JSON_VALUE})
+    @RequestMapping(value = "/{type}", method = RequestMethod.GET
+            , produces = {MediaType.APPLICATION_JSON_VALUE, NdjsonHttpMessageConverter.APPLICATION_NDJSON_VALUE, SmileHttpMessageConverter.APPLICATION_SMILE_VALUE})
     public
     @ResponseBody
-    Map<String, Object> getByQuery(
-            @PathVariable() @ApiPathParam(name = "type", description = TYPE_DESCRIPTION) String type,
+    WebAsyncTask<DocumentsResponse> getByQuery(
+            @PathVariable() @ApiPathParam(name = "type", description = TYPE_DESCRIPTION) final String type,
             @RequestParam(value = QUERY_PARAM, required = false)
-            @ApiQueryParam(name = "query", description = "a SQLQuery that is a SQL-like syntax") String query,
+            @ApiQueryParam(name = "query", description = "a SQLQuery that is a SQL-like syntax") final String query,
             @RequestParam(value = MAX_PARAM, required = false)
-            @ApiQueryParam(name = "size", description = "") Integer size) throws ObjectNotFoundException {
+            @ApiQueryParam(name = "size", description = "") final Integer size,
+            @RequestParam(value = CURSOR_PARAM, required = false)
+            @ApiQueryParam(name = "cursor", description = "* to open a new cursor, or the cursor returned by the previous page") final String cursor,
+            @RequestParam(value = FIELDS_PARAM, required = false)
+            @ApiQueryParam(name = "fields", description = FIELDS_DESCRIPTION) final String fields,
+            @RequestParam(value = ROUTING_PARAM, required = false)
+            @ApiQueryParam(name = "routing", description = ROUTING_DESCRIPTION) final String routing) throws ObjectNotFoundException {
+        //paged reads keep their cursor open on the remote proxy
+        final GigaSpace gigaSpace = cursor == null ? ControllerUtils.xapCache.getForReading(type) : ControllerUtils.xapCache.get();
+        return async(ControllerUtils.bulkPool, "getByQuery", type, new Callable<DocumentsResponse>() {
+            @Override
+            public DocumentsResponse call() throws ObjectNotFoundException {
+                return readByQuery(gigaSpace, type, query, size, cursor, fields, routing);
+            }
+        });
+    }
+
+    private DocumentsResponse readByQuery(GigaSpace gigaSpace, String type, String query, Integer size, String cursor, String fields, String routing) throws ObjectNotFoundException {
         if (logger.isLoggable(Level.FINE))
             logger.fine("creating read query with type: " + type + " and query: " + query);
 
         if (query == null) {
             query = ""; //Query all the data
         }
+        RequestMetrics.describe(query, size);
 
-        GigaSpace gigaSpace = ControllerUtils.xapCache.get();
         SQLQuery<Object> sqlQuery = new SQLQuery<Object>(type, query);
+        if (routing != null) {
+            sqlQuery.setRouting(getTypeBasedRoutingObject(gigaSpace, type, routing));
+        }
+        String[] projections = ControllerUtils.parseFields(fields);
+        if (projections != null) {
+            sqlQuery.setProjections(projections);
+        }
+        if (cursor != null) {
+            String cursorKey = type + "|query:" + ResponseCache.normalizeQuery(query) + "|fields:" + fieldsKey(fields)
+                    + "|routing:" + routing;
+            return readPage(gigaSpace, sqlQuery, cursorKey, cursor, size == null ? DEFAULT_PAGE_SIZE : size.intValue());
+        }
         int maxSize = (size == null ? maxReturnValues : size.intValue());
+        String cacheKey = null;
+        if (ControllerUtils.responseCache.isEnabled()) {
+            cacheKey = ControllerUtils.responseCache.key(gigaSpace, type, "query:" + ResponseCache.normalizeQuery(query)
+                    + "|max:" + maxSize + "|fields:" + fieldsKey(fields) + "|routing:" + routing);
+            Object cached = ControllerUtils.responseCache.get(cacheKey);
+            if (cached != null) {
+                RequestMetrics.documents(((Object[]) cached).length);
+                return new DocumentsResponse((Object[]) cached);
+            }
+        }
         Object[] docs;
+        long start = System.nanoTime();
         try {
             docs = gigaSpace.readMultiple(sqlQuery, maxSize);
         } catch (DataAccessException e) {
             throw translateDataAccessException(gigaSpace, e, type);
+        } finally {
+            RequestMetrics.phase(RequestMetrics.Phase.SPACE, start);
         }
 
+        if (cacheKey != null) {
+            docs = serialize(docs);
+            ControllerUtils.responseCache.put(cacheKey, docs);
+        }
+        RequestMetrics.documents(docs == null ? 0 : docs.length);
+        return new DocumentsResponse(docs);
+    }
+
+    private static RawJsonValue[] serialize(Object[] docs) {
+        RawJsonValue[] values = new RawJsonValue[docs == null ? 0 : docs.length];
+        long start = System.nanoTime();
         try {
-            Map<String, Object> result = new HashMap<String, Object>();
-            result.put("status", "success");
-            result.put("data", ControllerUtils.mapper.readValue(ControllerUtils.mapper.writeValueAsString(docs), ArrayList.class));
-            return result;
+            for (int i = 0; i < values.length; i++) {
+                values[i] = new RawJsonValue(ControllerUtils.mapper.writeValueAsString(docs[i]));
+            }
         } catch (IOException e) {
             throw new RestException(e.getMessage());
+        } finally {
+            RequestMetrics.phase(RequestMetrics.Phase.SERIALIZE, start);
+        }
+        return values;
+    }
+
+    /**
+     * The projections in a canonical form, so they can be part of a cache key
+     */
+    private static String fieldsKey(String fields) {
+        String[] projections = ControllerUtils.parseFields(fields);
+        if (projections == null) {
+            return "";
+        }
+        StringBuilder key = new StringBuilder();
+        for (String projection : projections) {
+            key.append(projection).append(',');
+        }
+        return key.toString();
+    }
+
+    /**
+     * @param key the type, query, projections and routing of the request, a cursor is resumed with the ones it was
+     *            opened with
+     * @throws CursorMismatchException if the cursor was opened with another key or in another space
+     */
+    private DocumentsResponse readPage(GigaSpace gigaSpace, SQLQuery<Object> sqlQuery, String key, String token, int pageSize)
+            throws ObjectNotFoundException {
+        if (pageSize <= 0) {
+            throw new RestException("max must be positive when reading with a cursor");
+        }
+        CursorRegistry.Cursor cursor;
+        Object[] docs;
+        long start = System.nanoTime();
+        try {
+            if (NEW_CURSOR.equals(token)) {
+                cursor = ControllerUtils.cursors.open(gigaSpace, sqlQuery, key, pageSize);
+            } else {
+                cursor = ControllerUtils.cursors.get(token, gigaSpace, key);
+            }
+            try {
+                docs = cursor.nextPage(pageSize);
+            } catch (ObjectNotFoundException e) {
+                //the lease of the iterator expired, the cursor cannot be resumed
+                ControllerUtils.cursors.close(cursor);
+                throw e;
+            }
+        } catch (DataAccessException e) {
+            throw translateDataAccessException(gigaSpace, e, sqlQuery.getTypeName());
+        } finally {
+            RequestMetrics.phase(RequestMetrics.Phase.SPACE, start);
+        }
+        RequestMetrics.documents(docs == null ? 0 : docs.length);
+
+        if (cursor.isExhausted()) {
+            ControllerUtils.cursors.close(cursor);
+            return new DocumentsResponse(docs);
         }
+        return new DocumentsResponse(docs, cursor.getToken());
     }
 
     /**
      * REST GET by ID request handler
+     * <p/>
+     * Served from the response cache when it is enabled, see response_cache_size.
      *
      * @param type
      * @param id
@@ -602,92 +914,465 @@ public class SpaceAPIController {
             path = "{type}/{id}",
             verb = ApiVerb.GET,
             description = "Read entry from space with the provided id"
-            , produces = {MediaType.APPLICATION_JSON_VALUE}
+            , produces = {MediaType.APPLICATION_JSON_VALUE, SmileHttpMessageConverter.APPLICATION_SMILE_VALUE}
     )
-    @RequestMapping(value = "/{type}/{id}", method = RequestMethod.GET, produces = {MediaType.APPLICATION_JSON_VALUE})
+    @RequestMapping(value = "/{type}/{id}", method = RequestMethod.GET, produces = {MediaType.APPLICATION_JSON_VALUE, SmileHttpMessageConverter.APPLICATION_SMILE_VALUE})
     public
     @ResponseBody
-    Map<String, Object> getById(
-            @PathVariable @ApiPathParam(name = "type", description = TYPE_DESCRIPTION) String type,
-            @PathVariable @ApiPathParam(name = "id") String id) throws ObjectNotFoundException {
-        GigaSpace gigaSpace = ControllerUtils.xapCache.get();
+    WebAsyncTask<Map<String, Object>> getById(
+            @PathVariable @ApiPathParam(name = "type", description = TYPE_DESCRIPTION) final String type,
+            @PathVariable @ApiPathParam(name = "id") final String id,
+            @RequestParam(value = FIELDS_PARAM, required = false)
+            @ApiQueryParam(name = "fields", description = FIELDS_DESCRIPTION) final String fields,
+            @RequestParam(value = ROUTING_PARAM, required = false)
+            @ApiQueryParam(name = "routing", description = ROUTING_DESCRIPTION) final String routing) throws ObjectNotFoundException {
+        final GigaSpace gigaSpace = ControllerUtils.xapCache.getForReading(type);
+        return async(ControllerUtils.pointPool, "getById", type, new Callable<Map<String, Object>>() {
+            @Override
+            public Map<String, Object> call() throws ObjectNotFoundException {
+                return readById(gigaSpace, type, id, fields, routing);
+            }
+        });
+    }
+
+    private Map<String, Object> readById(GigaSpace gigaSpace, String type, String id, String fields, String routing) throws ObjectNotFoundException {
         //read by id request
         Object typedBasedId = getTypeBasedIdObject(gigaSpace, type, id);
+        Object typedBasedRouting = routing == null ? null : getTypeBasedRoutingObject(gigaSpace, type, routing);
+        String cacheKey = null;
+        if (ControllerUtils.responseCache.isEnabled()) {
+            cacheKey = ControllerUtils.responseCache.key(gigaSpace, type, "id:" + id + "|fields:" + fieldsKey(fields) + "|routing:" + routing);
+            Object cached = ControllerUtils.responseCache.get(cacheKey);
+            if (cached != null) {
+                Map<String, Object> result = new LinkedHashMap<String, Object>();
+                result.put("status", "success");
+                result.put("data", cached);
+                return result;
+            }
+        }
         if (logger.isLoggable(Level.FINE))
             logger.fine("creating readbyid query with type: " + type + " and id: " + id);
-        IdQuery<Object> idQuery = new IdQuery<Object>(type, typedBasedId);
+        IdQuery<Object> idQuery = new IdQuery<Object>(type, typedBasedId, typedBasedRouting);
+        String[] projections = ControllerUtils.parseFields(fields);
+        if (projections != null) {
+            idQuery.setProjections(projections);
+        }
         Object doc;
+        long start = System.nanoTime();
         try {
             doc = gigaSpace.readById(idQuery);
         } catch (DataAccessException e) {
             throw translateDataAccessException(gigaSpace, e, type);
+        } finally {
+            RequestMetrics.phase(RequestMetrics.Phase.SPACE, start);
         }
 
+        RequestMetrics.documents(doc == null ? 0 : 1);
         if (doc == null) {
             doc = emptyObject;
         }
 
+        start = System.nanoTime();
         try {
             Map<String, Object> result = new LinkedHashMap<String, Object>();
             result.put("status", "success");
-            result.put("data", ControllerUtils.mapper.readValue(ControllerUtils.mapper.writeValueAsString(doc), LinkedHashMap.class));
+            String json = ControllerUtils.mapper.writeValueAsString(doc);
+            if (cacheKey != null) {
+                //the cached json is written to the response as is
+                RawJsonValue data = new RawJsonValue(json);
+                ControllerUtils.responseCache.put(cacheKey, data);
+                result.put("data", data);
+            } else {
+                result.put("data", ControllerUtils.mapper.readValue(json, LinkedHashMap.class));
+            }
             return result;
         } catch (IOException e) {
             throw new RestException(e.getMessage());
+        } finally {
+            RequestMetrics.phase(RequestMetrics.Phase.SERIALIZE, start);
         }
     }
 
+    /**
+     * REST multiple GET by ids request handler.
+     * <p/>
+     * The body is a json array of ids. The ids are converted using the type's id property and read with a
+     * single readByIds call. The data holds an entry per requested id, in request order:
+     * { "id" : "1", "found" : true, "document" : {...} } or { "id" : "2", "found" : false }
+     *
+     * @param type
+     * @param requestBody json array of ids
+     * @return
+     */
+    @ApiMethod(
+            path = "{type}/_mget",
+            verb = ApiVerb.POST,
+            description = "Read the entries with the provided ids, the body is a json array of ids"
+            , consumes = {MediaType.APPLICATION_JSON_VALUE}, produces = {MediaType.APPLICATION_JSON_VALUE, SmileHttpMessageConverter.APPLICATION_SMILE_VALUE}
+    )
+    @RequestMapping(value = "/{type}/_mget", method = RequestMethod.POST
+            , consumes = {MediaType.APPLICATION_JSON_VALUE}, produces = {MediaType.APPLICATION_JSON_VALUE, SmileHttpMessageConverter.APPLICATION_SMILE_VALUE})
+    public
+    @ResponseBody
+    WebAsyncTask<DocumentsResponse> getByIds(
+            @PathVariable @ApiPathParam(name = "type", description = TYPE_DESCRIPTION) final String type,
+            @RequestBody(required = false) @ApiBodyObject final String requestBody,
+            @RequestParam(value = FIELDS_PARAM, required = false)
+            @ApiQueryParam(name = "fields", description = FIELDS_DESCRIPTION) final String fields) {
+        final GigaSpace gigaSpace = ControllerUtils.xapCache.getForReading(type);
+        return async(ControllerUtils.pointPool, "getByIds", type, new Callable<DocumentsResponse>() {
+            @Override
+            public DocumentsResponse call() {
+                return readByIds(gigaSpace, type, requestBody, fields);
+            }
+        });
+    }
+
+    private DocumentsResponse readByIds(GigaSpace gigaSpace, String type, String requestBody, String fields) {
+        if (requestBody == null) {
+            throw new RestException("Request body cannot be empty");
+        }
+        List<Object> ids;
+        long start = System.nanoTime();
+        try {
+            ids = ControllerUtils.mapper.readValue(requestBody, ArrayList.class);
+        } catch (IOException e) {
+            throw new RestException("Request body must be a json array of ids: " + e.getMessage());
+        } finally {
+            RequestMetrics.phase(RequestMetrics.Phase.PARSE, start);
+        }
+
+        TypeDescriptorCache.CachedType cachedType = ControllerUtils.typeCache.getRequired(gigaSpace, type);
+        Object[] typedBasedIds = new Object[ids.size()];
+        for (int i = 0; i < typedBasedIds.length; i++) {
+            if (ids.get(i) == null) {
+                throw new RestException("Id at index [" + i + "] cannot be null");
+            }
+            typedBasedIds[i] = getTypeBasedIdObject(cachedType, String.valueOf(ids.get(i)));
+        }
+        if (logger.isLoggable(Level.FINE))
+            logger.fine("creating readbyids query with type: " + type + " and " + typedBasedIds.length + " ids");
+
+        IdsQuery<Object> idsQuery = new IdsQuery<Object>(type, typedBasedIds);
+        String[] projections = ControllerUtils.parseFields(fields);
+        if (projections != null) {
+            idsQuery.setProjections(projections);
+        }
+        Object[] docs;
+        start = System.nanoTime();
+        try {
+            docs = typedBasedIds.length == 0 ? new Object[0] : gigaSpace.readByIds(idsQuery).getResultsArray();
+        } catch (DataAccessException e) {
+            throw translateDataAccessException(gigaSpace, e, type);
+        } finally {
+            RequestMetrics.phase(RequestMetrics.Phase.SPACE, start);
+        }
+
+        Object[] entries = new Object[docs.length];
+        int found = 0;
+        for (int i = 0; i < docs.length; i++) {
+            Map<String, Object> entry = new LinkedHashMap<String, Object>();
+            entry.put("id", ids.get(i));
+            entry.put("found", docs[i] != null);
+            if (docs[i] != null) {
+                entry.put("document", docs[i]);
+                found++;
+            }
+            entries[i] = entry;
+        }
+        RequestMetrics.documents(found);
+        return new DocumentsResponse(entries);
+    }
+
+    /**
+     * REST AGGREGATE request handler.
+     * <p/>
+     * Runs the aggregations on the entries matching the query inside each partition, and returns the merged result:
+     * { "status" : "success", "data" : { "count" : 5, "sum(Price)" : 52.5 } }
+     * With groupBy the data holds an entry per group:
+     * { "status" : "success", "data" : [{ "group" : { "Category" : "Hardware" }, "count" : 3, "sum(Price)" : 30.5 }, ...] }
+     *
+     * @param type
+     * @param query
+     * @return
+     */
+    @ApiMethod(
+            path = "{type}/_aggregate",
+            verb = ApiVerb.GET,
+            description = "Aggregates the entries that match the query in space and returns only the aggregated values"
+            , produces = {MediaType.APPLICATION_JSON_VALUE, SmileHttpMessageConverter.APPLICATION_SMILE_VALUE}
+    )
+    @RequestMapping(value = "/{type}/_aggregate", method = RequestMethod.GET, produces = {MediaType.APPLICATION_JSON_VALUE, SmileHttpMessageConverter.APPLICATION_SMILE_VALUE})
+    public
+    @ResponseBody
+    WebAsyncTask<Map<String, Object>> aggregate(
+            @PathVariable() @ApiPathParam(name = "type", description = TYPE_DESCRIPTION) final String type,
+            @RequestParam(value = QUERY_PARAM, required = false)
+            @ApiQueryParam(name = "query", description = "a SQLQuery that is a SQL-like syntax") final String query,
+            @RequestParam(value = AGGREGATIONS_PARAM, required = false)
+            @ApiQueryParam(name = "aggregations", description = "Comma separated list of count, count(path), sum(path), avg(path), min(path) and max(path). Default is count") final String aggregations,
+            @RequestParam(value = GROUP_BY_PARAM, required = false)
+            @ApiQueryParam(name = "groupBy", description = "Comma separated list of the paths to group the entries by") final String groupBy) {
+        final GigaSpace gigaSpace = ControllerUtils.xapCache.get();
+        return async(ControllerUtils.bulkPool, "aggregate", type, new Callable<Map<String, Object>>() {
+            @Override
+            public Map<String, Object> call() {
+                return aggregateByQuery(gigaSpace, type, query, aggregations, groupBy);
+            }
+        });
+    }
+
+    private Map<String, Object> aggregateByQuery(GigaSpace gigaSpace, String type, String query, String aggregations, String groupBy) {
+        if (logger.isLoggable(Level.FINE))
+            logger.fine("creating aggregate query with type: " + type + " and query: " + query);
+
+        if (query == null) {
+            query = ""; //Query all the data
+        }
+        RequestMetrics.describe(query, null);
+        AggregationSpec aggregationSpec = new AggregationSpec(aggregations);
+        String[] groupByPaths = ControllerUtils.parseFields(groupBy);
+
+        SQLQuery<Object> sqlQuery = new SQLQuery<Object>(type, query);
+        Object data;
+        long start = System.nanoTime();
+        try {
+            if (groupByPaths == null) {
+                data = aggregationSpec.toMap(gigaSpace.aggregate(sqlQuery, aggregationSpec.toAggregationSet()));
+            } else {
+                GroupByResult groupByResult = QueryExtension.groupBy(gigaSpace, sqlQuery, aggregationSpec.toGroupByAggregator(groupByPaths));
+                data = aggregationSpec.toList(groupByResult, groupByPaths);
+            }
+        } catch (DataAccessException e) {
+            throw translateDataAccessException(gigaSpace, e, type);
+        } finally {
+            RequestMetrics.phase(RequestMetrics.Phase.SPACE, start);
+        }
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+        result.put("status", "success");
+        result.put("data", data);
+        return result;
+    }
+
     /**
      * REST COUNT request handler
+     * <p/>
+     * With partitions=true the partitions are counted in parallel, and the data holds the total along with the
+     * count of each partition: { "count" : 2000, "partitions" : [{ "partition" : 0, "count" : 1000 }, ...] }
      */
     @ApiMethod(
             path = "{type}/count",
             verb = ApiVerb.GET,
-            description = "Returns the number of entries in space of the specified type\n", produces = {MediaType.APPLICATION_JSON_VALUE}
+            description = "Returns the number of entries in space of the specified type\n", produces = {MediaType.APPLICATION_JSON_VALUE, SmileHttpMessageConverter.APPLICATION_SMILE_VALUE}
     )
     @RequestMapping(value = "/{type}/count", method = RequestMethod.GET
-            , produces = {MediaType.APPLICATION_JSON_VALUE})
+            , produces = {MediaType.APPLICATION_JSON_VALUE, SmileHttpMessageConverter.APPLICATION_SMILE_VALUE})
     public
     @ResponseBody
-    Map<String, Object> count(
+    WebAsyncTask<Map<String, Object>> count(
             @ApiPathParam(name = "type", description = TYPE_DESCRIPTION)
-            @PathVariable String type) throws ObjectNotFoundException {
+            @PathVariable final String type,
+            @RequestParam(value = QUERY_PARAM, required = false)
+            @ApiQueryParam(name = "query", description = "a SQLQuery that is a SQL-like syntax, all the entries of the type are counted by default") final String query,
+            @RequestParam(value = PARTITIONS_PARAM, required = false)
+            @ApiQueryParam(name = "partitions", description = "true to return the count of each partition as well") final Boolean partitions) throws ObjectNotFoundException {
+        //partitions are counted on the remote proxy, routed to each partition
+        final GigaSpace gigaSpace = partitions != null && partitions.booleanValue()
+                ? ControllerUtils.xapCache.get() : ControllerUtils.xapCache.getForReading(type);
+        return async(ControllerUtils.bulkPool, "count", type, new Callable<Map<String, Object>>() {
+            @Override
+            public Map<String, Object> call() throws ObjectNotFoundException {
+                return countByQuery(gigaSpace, type, query, partitions);
+            }
+        });
+    }
 
-        GigaSpace gigaSpace = ControllerUtils.xapCache.get();
-        //read by id request
-        Integer cnt;
+    private Map<String, Object> countByQuery(GigaSpace gigaSpace, String type, String query, Boolean partitions) throws ObjectNotFoundException {
+        if (query == null) {
+            query = ""; //Count all the data
+        }
+        RequestMetrics.describe(query, null);
+        Object data;
+        long start = System.nanoTime();
         try {
-            cnt = gigaSpace.count(new SpaceDocument(type));
+            if (partitions != null && partitions.booleanValue()) {
+                List<Map<String, Object>> partitionCounts = ControllerUtils.partitionCounter.count(gigaSpace, type, query);
+                int total = 0;
+                for (Map<String, Object> partitionCount : partitionCounts) {
+                    total += (Integer) partitionCount.get("count");
+                }
+                Map<String, Object> counts = new LinkedHashMap<String, Object>();
+                counts.put("count", total);
+                counts.put("partitions", partitionCounts);
+                data = counts;
+            } else {
+                data = gigaSpace.count(new SQLQuery<Object>(type, query));
+            }
         } catch (DataAccessException e) {
             throw translateDataAccessException(gigaSpace, e, type);
+        } finally {
+            RequestMetrics.phase(RequestMetrics.Phase.SPACE, start);
         }
 
-        if (cnt == null) {
-            cnt = 0;
-        }
         Map<String, Object> result = new Hashtable<String, Object>();
         result.put("status", "success");
-        result.put("data", cnt);
+        result.put("data", data);
         return result;
     }
 
     private Object getTypeBasedIdObject(GigaSpace gigaSpace, String type, String id) {
-        SpaceTypeDescriptor typeDescriptor = gigaSpace.getTypeManager().getTypeDescriptor(type);
-        if (typeDescriptor == null) {
-            throw new TypeNotFoundException(type);
-        }
+        return getTypeBasedIdObject(ControllerUtils.typeCache.getRequired(gigaSpace, type), id);
+    }
 
+    private Object getTypeBasedIdObject(TypeDescriptorCache.CachedType cachedType, String id) {
         //Investigate id type
-        String idPropertyName = typeDescriptor.getIdPropertyName();
-        SpacePropertyDescriptor idProperty = typeDescriptor.getFixedProperty(idPropertyName);
         try {
-            return ControllerUtils.convertPropertyToPrimitiveType(id, idProperty.getType(), idPropertyName);
+            return cachedType.getIdConverter().convert(id);
         } catch (UnsupportedTypeException e) {
             throw new UnsupportedTypeException("Only primitive SpaceId is currently supported by RestData") {
             };
         }
     }
 
+    private Object getTypeBasedRoutingObject(GigaSpace gigaSpace, String type, String routing) {
+        TypeDescriptorCache.CachedType cachedType = ControllerUtils.typeCache.getRequired(gigaSpace, type);
+        ControllerUtils.PropertyConverter converter = cachedType.getRoutingConverter();
+        if (converter == null) {
+            throw new RestException("Type " + type + " has no routing property");
+        }
+        try {
+            return converter.convert(routing);
+        } catch (UnsupportedTypeException e) {
+            throw new UnsupportedTypeException("Only primitive routing property is currently supported by RestData") {
+            };
+        }
+    }
+
+
+    /**
+     * REST PATCH by id request handler.
+     * <p/>
+     * Applies the change operations of the body to the entry with the provided id, in space, without reading it:
+     * { "set" : { "Name" : "Anvil" }, "increment" : { "Stock" : -1 }, "unset" : ["Discount"],
+     *   "addToCollection" : { "Tags" : "sale" }, "removeFromCollection" : { "Tags" : "new" } }
+     * The data holds the number of changed entries, 0 if there is no entry with the provided id.
+     *
+     * @param type
+     * @param id
+     * @return
+     */
+    @ApiMethod(
+            path = "{type}/{id}",
+            verb = ApiVerb.PATCH,
+            description = "Changes the entry with the provided id, the body is a json object of change operations: "
+                    + "set, unset, increment, addToCollection and removeFromCollection"
+            , consumes = {MediaType.APPLICATION_JSON_VALUE}, produces = {MediaType.APPLICATION_JSON_VALUE}
+    )
+    @RequestMapping(value = "/{type}/{id}", method = RequestMethod.PATCH
+            , consumes = {MediaType.APPLICATION_JSON_VALUE}, produces = {MediaType.APPLICATION_JSON_VALUE})
+    public
+    @ResponseBody
+    WebAsyncTask<Map<String, Object>> patchById(
+            @ApiPathParam(name = "type", description = TYPE_DESCRIPTION)
+            @PathVariable final String type,
+            @ApiPathParam(name = "id")
+            @PathVariable final String id,
+            @RequestBody(required = false) @ApiBodyObject final String requestBody) {
+        final GigaSpace gigaSpace = ControllerUtils.xapCache.get();
+        return async(ControllerUtils.pointPool, "patchById", type, new Callable<Map<String, Object>>() {
+            @Override
+            public Map<String, Object> call() {
+                return changeById(gigaSpace, type, id, requestBody);
+            }
+        });
+    }
+
+    private Map<String, Object> changeById(GigaSpace gigaSpace, String type, String id, String requestBody) {
+        TypeDescriptorCache.CachedType cachedType = ControllerUtils.typeCache.getRequired(gigaSpace, type);
+        ChangeSet changeSet = createChangeSet(requestBody, cachedType);
+        Object typedBasedId = getTypeBasedIdObject(cachedType, id);
+        if (logger.isLoggable(Level.FINE))
+            logger.fine("creating change by id query with type: " + type + " and id: " + id);
+        return change(gigaSpace, type, new IdQuery<Object>(type, typedBasedId), changeSet);
+    }
+
+    /**
+     * REST PATCH by query request handler, applies the change operations of the body to all the matching entries.
+     * See {@link #patchById} for the operations.
+     *
+     * @param type
+     * @param query
+     * @return
+     */
+    @ApiMethod(
+            path = "{type}/",
+            verb = ApiVerb.PATCH,
+            description = "Changes the entries matching the given query, the body is a json object of change operations: "
+                    + "set, unset, increment, addToCollection and removeFromCollection"
+            , consumes = {MediaType.APPLICATION_JSON_VALUE}, produces = {MediaType.APPLICATION_JSON_VALUE}
+    )
+    @RequestMapping(value = "/{type}", method = RequestMethod.PATCH
+            , consumes = {MediaType.APPLICATION_JSON_VALUE}, produces = {MediaType.APPLICATION_JSON_VALUE})
+    public
+    @ResponseBody
+    WebAsyncTask<Map<String, Object>> patchByQuery(
+            @ApiPathParam(name = "type", description = TYPE_DESCRIPTION)
+            @PathVariable final String type,
+            @ApiQueryParam(name = "query")
+            @RequestParam(value = QUERY_PARAM) final String query,
+            @RequestBody(required = false) @ApiBodyObject final String requestBody) {
+        final GigaSpace gigaSpace = ControllerUtils.xapCache.get();
+        return async(ControllerUtils.bulkPool, "patchByQuery", type, new Callable<Map<String, Object>>() {
+            @Override
+            public Map<String, Object> call() {
+                return changeByQuery(gigaSpace, type, query, requestBody);
+            }
+        });
+    }
+
+    private Map<String, Object> changeByQuery(GigaSpace gigaSpace, String type, String query, String requestBody) {
+        ChangeSet changeSet = createChangeSet(requestBody, ControllerUtils.typeCache.getRequired(gigaSpace, type));
+        if (logger.isLoggable(Level.FINE))
+            logger.fine("creating change query with type: " + type + " and query: " + query);
+        RequestMetrics.describe(query, null);
+        return change(gigaSpace, type, new SQLQuery<Object>(type, query), changeSet);
+    }
+
+    private static ChangeSet createChangeSet(String requestBody, TypeDescriptorCache.CachedType cachedType) {
+        if (requestBody == null) {
+            throw new RestException("Request body cannot be empty");
+        }
+        Map<String, Object> operations;
+        long start = System.nanoTime();
+        try {
+            operations = ControllerUtils.mapper.readValue(requestBody, LinkedHashMap.class);
+        } catch (IOException e) {
+            throw new RestException("Request body must be a json object of change operations: " + e.getMessage());
+        } finally {
+            RequestMetrics.phase(RequestMetrics.Phase.PARSE, start);
+        }
+        return ControllerUtils.createChangeSet(operations, cachedType);
+    }
+
+    private Map<String, Object> change(GigaSpace gigaSpace, String type, ISpaceQuery<Object> query, ChangeSet changeSet) {
+        ChangeResult<Object> changeResult;
+        long start = System.nanoTime();
+        try {
+            changeResult = gigaSpace.change(query, changeSet);
+        } catch (DataAccessException e) {
+            throw translateDataAccessException(gigaSpace, e, type);
+        } finally {
+            RequestMetrics.phase(RequestMetrics.Phase.SPACE, start);
+            ControllerUtils.responseCache.invalidate(gigaSpace, type);
+        }
+        RequestMetrics.documents(changeResult.getNumberOfChangedEntries());
+        Map<String, Object> data = new HashMap<String, Object>();
+        data.put("changed", changeResult.getNumberOfChangedEntries());
+        Map<String, Object> result = new HashMap<String, Object>();
+        result.put("status", "success");
+        result.put("data", data);
+        return result;
+    }
 
     /**
      * REST DELETE by id request handler
@@ -707,28 +1392,45 @@ public class SpaceAPIController {
             ,produces = {MediaType.APPLICATION_JSON_VALUE})
     public
     @ResponseBody
-    Map<String, Object> deleteById(
+    WebAsyncTask<Map<String, Object>> deleteById(
             @ApiPathParam(name = "type", description = TYPE_DESCRIPTION)
-            @PathVariable String type,
+            @PathVariable final String type,
             @ApiPathParam(name = "id")
-            @PathVariable String id) throws ObjectNotFoundException {
+            @PathVariable final String id,
+            @ApiQueryParam(name = "routing", description = ROUTING_DESCRIPTION)
+            @RequestParam(value = ROUTING_PARAM, required = false) final String routing) throws ObjectNotFoundException {
+        final GigaSpace gigaSpace = ControllerUtils.xapCache.get();
+        return async(ControllerUtils.pointPool, "deleteById", type, new Callable<Map<String, Object>>() {
+            @Override
+            public Map<String, Object> call() throws ObjectNotFoundException {
+                return takeById(gigaSpace, type, id, routing);
+            }
+        });
+    }
 
-        GigaSpace gigaSpace = ControllerUtils.xapCache.get();
+    private Map<String, Object> takeById(GigaSpace gigaSpace, String type, String id, String routing) throws ObjectNotFoundException {
         //take by id
         Object typedBasedId = getTypeBasedIdObject(gigaSpace, type, id);
+        Object typedBasedRouting = routing == null ? null : getTypeBasedRoutingObject(gigaSpace, type, routing);
         if (logger.isLoggable(Level.FINE))
             logger.fine("creating takebyid query with type: " + type + " and id: " + id);
         Object doc;
+        long start = System.nanoTime();
         try {
-            doc = gigaSpace.takeById(new IdQuery<Object>(type, typedBasedId));
+            doc = gigaSpace.takeById(new IdQuery<Object>(type, typedBasedId, typedBasedRouting));
         } catch (DataAccessException e) {
             throw translateDataAccessException(gigaSpace, e, type);
+        } finally {
+            RequestMetrics.phase(RequestMetrics.Phase.SPACE, start);
+            ControllerUtils.responseCache.invalidate(gigaSpace, type);
         }
 
+        RequestMetrics.documents(doc == null ? 0 : 1);
         if (doc == null) {
             doc = emptyObject;
         }
 
+        start = System.nanoTime();
         try {
             Map<String, Object> result = new HashMap<String, Object>();
             result.put("status", "success");
@@ -736,11 +1438,18 @@ public class SpaceAPIController {
             return result;
         } catch (IOException e) {
             throw new RestException(e.getMessage());
+        } finally {
+            RequestMetrics.phase(RequestMetrics.Phase.SERIALIZE, start);
         }
     }
 
     /**
      * REST DELETE by query request handler
+     * <p/>
+     * By default the removed entries are returned. With returnData=false they are cleared without being read,
+     * and the data holds only their number: { "status" : "success", "data" : { "deleted" : 1000000 } }.
+     * With batchSize the entries are taken in batches of batchSize, each batch streamed to the client before the
+     * next one is taken. With Accept: application/x-ndjson the returned entries are written one per line.
      *
      * @param type
      * @param query
@@ -750,48 +1459,149 @@ public class SpaceAPIController {
             path = "{type}/",
             verb = ApiVerb.DELETE,
             description = "Gets and deletes entries from space that matches the query."
-            ,produces = {MediaType.APPLICATION_JSON_VALUE}
+            ,produces = {MediaType.APPLICATION_JSON_VALUE, NdjsonHttpMessageConverter.APPLICATION_NDJSON_VALUE, SmileHttpMessageConverter.APPLICATION_SMILE_VALUE}
     )
     @RequestMapping(value = "/{type}", method = RequestMethod.DELETE
-            ,produces = {MediaType.APPLICATION_JSON_VALUE})
+            ,produces = {MediaType.APPLICATION_JSON_VALUE, NdjsonHttpMessageConverter.APPLICATION_NDJSON_VALUE, SmileHttpMessageConverter.APPLICATION_SMILE_VALUE})
     public
     @ResponseBody
-    Map<String, Object> deleteByQuery(
+    WebAsyncTask<Object> deleteByQuery(
             @ApiPathParam(name = "type", description = TYPE_DESCRIPTION)
-            @PathVariable String type,
+            @PathVariable final String type,
             @ApiQueryParam(name = "query")
-            @RequestParam(value = QUERY_PARAM) String query,
+            @RequestParam(value = QUERY_PARAM) final String query,
             @ApiQueryParam(name = "max", description = "The maximum number of entries to return. Default is Integer.MAX_VALUE")
-            @RequestParam(value = MAX_PARAM, required = false) Integer max) {
+            @RequestParam(value = MAX_PARAM, required = false) final Integer max,
+            @ApiQueryParam(name = "fields", description = FIELDS_DESCRIPTION)
+            @RequestParam(value = FIELDS_PARAM, required = false) final String fields,
+            @ApiQueryParam(name = "returnData", description = "false to delete the entries without returning them, only their number is returned. Default is true")
+            @RequestParam(value = RETURN_DATA_PARAM, required = false) final Boolean returnData,
+            @ApiQueryParam(name = "batchSize", description = "Take the entries in batches of batchSize and stream each batch before taking the next one")
+            @RequestParam(value = BATCH_SIZE_PARAM, required = false) final Integer batchSize,
+            @ApiQueryParam(name = "routing", description = ROUTING_DESCRIPTION)
+            @RequestParam(value = ROUTING_PARAM, required = false) final String routing) {
+        final GigaSpace gigaSpace = ControllerUtils.xapCache.get();
+        return async(ControllerUtils.bulkPool, "deleteByQuery", type, new Callable<Object>() {
+            @Override
+            public Object call() {
+                return takeByQuery(gigaSpace, type, query, max, fields, returnData, batchSize, routing);
+            }
+        });
+    }
+
+    private Object takeByQuery(GigaSpace gigaSpace, String type, String query, Integer max, String fields, Boolean returnData, Integer batchSize, String routing) {
         if (logger.isLoggable(Level.FINE))
             logger.fine("creating take query with type: " + type + " and query: " + query);
+        RequestMetrics.describe(query, max);
 
-        GigaSpace gigaSpace = ControllerUtils.xapCache.get();
         SQLQuery<Object> sqlQuery = new SQLQuery<Object>(type, query);
+        if (routing != null) {
+            sqlQuery.setRouting(getTypeBasedRoutingObject(gigaSpace, type, routing));
+        }
         int maxSize = (max == null ? maxReturnValues : max.intValue());
+        if (returnData != null && !returnData.booleanValue()) {
+            return clear(gigaSpace, type, sqlQuery, max);
+        }
+        String[] projections = ControllerUtils.parseFields(fields);
+        if (projections != null) {
+            sqlQuery.setProjections(projections);
+        }
+        if (batchSize != null) {
+            if (batchSize.intValue() <= 0) {
+                throw new RestException("batchSize must be a positive number");
+            }
+            return takeInBatches(gigaSpace, type, sqlQuery, batchSize.intValue(), maxSize);
+        }
         Object[] docs;
+        long start = System.nanoTime();
         try {
             docs = gigaSpace.takeMultiple(sqlQuery, maxSize);
         } catch (DataAccessException e) {
             throw translateDataAccessException(gigaSpace, e, type);
+        } finally {
+            RequestMetrics.phase(RequestMetrics.Phase.SPACE, start);
+            ControllerUtils.responseCache.invalidate(gigaSpace, type);
         }
+        RequestMetrics.documents(docs == null ? 0 : docs.length);
+        return new DocumentsResponse(docs);
+    }
 
-        if (docs == null) {
-            docs = new Object[]{};
+    /**
+     * Takes the first batch, so a failure before anything was removed is mapped like the failures of the other
+     * handlers. The next batches are taken while the response is written, see {@link TakeResponse}.
+     */
+    private DocumentsResponse takeInBatches(GigaSpace gigaSpace, String type, SQLQuery<Object> sqlQuery, int batchSize, int maxSize) {
+        Object[] first;
+        long start = System.nanoTime();
+        try {
+            first = gigaSpace.takeMultiple(sqlQuery, Math.min(batchSize, maxSize));
+        } catch (DataAccessException e) {
+            throw translateDataAccessException(gigaSpace, e, type);
+        } finally {
+            RequestMetrics.phase(RequestMetrics.Phase.SPACE, start);
+            ControllerUtils.responseCache.invalidate(gigaSpace, type);
+        }
+        if (first == null || first.length == 0 || first.length >= maxSize) {
+            RequestMetrics.documents(first == null ? 0 : first.length);
+            return new DocumentsResponse(first);
         }
+        return new TakeResponse(gigaSpace, sqlQuery, first, batchSize, maxSize, RequestMetrics.current());
+    }
 
+    /**
+     * Removes the matching entries without reading them. Without max all of them are cleared at once, with max
+     * they are taken in batches of DEFAULT_PAGE_SIZE entries which are dropped as soon as they are taken.
+     */
+    private Map<String, Object> clear(GigaSpace gigaSpace, String type, SQLQuery<Object> sqlQuery, Integer max) {
+        int deleted = 0;
+        long start = System.nanoTime();
         try {
-            Map<String, Object> result = new HashMap<String, Object>();
-            result.put("status", "success");
-            result.put("data", ControllerUtils.mapper.readValue(ControllerUtils.mapper.writeValueAsString(docs), ArrayList.class));
-            return result;
-        } catch (IOException e) {
-            throw new RestException(e.getMessage());
+            if (max == null) {
+                deleted = gigaSpace.clear(sqlQuery, ClearModifiers.NONE);
+            } else {
+                while (deleted < max.intValue()) {
+                    Object[] batch = gigaSpace.takeMultiple(sqlQuery, Math.min(DEFAULT_PAGE_SIZE, max.intValue() - deleted));
+                    if (batch == null || batch.length == 0) {
+                        break;
+                    }
+                    deleted += batch.length;
+                }
+            }
+        } catch (DataAccessException e) {
+            throw translateDataAccessException(gigaSpace, e, type);
+        } finally {
+            RequestMetrics.phase(RequestMetrics.Phase.SPACE, start);
+            ControllerUtils.responseCache.invalidate(gigaSpace, type);
         }
+        if (logger.isLoggable(Level.FINE))
+            logger.fine("deleted " + deleted + " entries of type: " + type);
+        RequestMetrics.documents(deleted);
+        Map<String, Object> data = new HashMap<String, Object>();
+        data.put("deleted", deleted);
+        Map<String, Object> result = new HashMap<String, Object>();
+        result.put("status", "success");
+        result.put("data", data);
+        return result;
     }
 
     /**
      * REST POST request handler
+     * <p/>
+     * The body is parsed as a stream and written to space in chunks of write_batch_size documents, with up to
+     * write_chunks_in_flight chunks being written at a time. The response reports the result of every chunk:
+     * { "status" : "success", "data" : { "written" : 2500, "chunks" : [{ "chunk" : 0, "offset" : 0, "documents" : 1000, "status" : "success" }, ...] } }
+     * If some of the chunks fail the other chunks are still written, and the error response carries the same data.
+     * The body is either json or smile (Content-Type: application/x-jackson-smile).
+     * <p/>
+     * With mode=oneway (or the X-Write-Mode: oneway header) the chunks are sent with one way writes and the
+     * request is accepted with 202 as soon as the body was parsed and sent, without waiting for the space.
+     * With mode=buffered the entries are queued in the ingestion buffer, which writes them to space in large
+     * batches, and the request is accepted with 202: { "status" : "success", "data" : { "buffered" : 1 } }.
+     * If the buffer of the type has no room for the entries, none of them is queued and the response is 429.
+     * <p/>
+     * The body is read on the pool, and the request is not timed out by async_timeout: the response always
+     * reports what was written. If the request is completed by the container first, e.g. because the client went
+     * away, the rest of the body is not read.
      *
      * @param type
      * @return
@@ -801,33 +1611,267 @@ public class SpaceAPIController {
             path = "{type}/",
             verb = ApiVerb.POST,
             description = "Write one or more entries to the space."
-            , consumes = {MediaType.APPLICATION_JSON_VALUE}, produces = {MediaType.APPLICATION_JSON_VALUE}
+            , consumes = {MediaType.APPLICATION_JSON_VALUE, SmileHttpMessageConverter.APPLICATION_SMILE_VALUE}, produces = {MediaType.APPLICATION_JSON_VALUE, SmileHttpMessageConverter.APPLICATION_SMILE_VALUE}
     )
     @RequestMapping(value = "/{type}", method = RequestMethod.POST
-            , consumes = {MediaType.APPLICATION_JSON_VALUE}, produces = {MediaType.APPLICATION_JSON_VALUE})
-    public
-    @ResponseBody
-    Map<String, Object> post(
+            , consumes = {MediaType.APPLICATION_JSON_VALUE, SmileHttpMessageConverter.APPLICATION_SMILE_VALUE}, produces = {MediaType.APPLICATION_JSON_VALUE, SmileHttpMessageConverter.APPLICATION_SMILE_VALUE})
+    public WebAsyncTask<ResponseEntity<Map<String, Object>>> post(
             @ApiPathParam(name = "type", description = TYPE_DESCRIPTION)
-            @PathVariable String type,
-            @RequestBody(required = false)
+            @PathVariable final String type,
+            @ApiQueryParam(name = "mode", description = WRITE_MODE_DESCRIPTION)
+            @RequestParam(value = WRITE_MODE_PARAM, required = false) final String mode,
+            @RequestHeader(value = WRITE_MODE_HEADER, required = false) final String modeHeader,
             @ApiBodyObject(clazz = ErrorMessage.class)
-            String requestBody)
-            throws TypeNotFoundException {
+            InputStream requestBody) throws TypeNotFoundException {
+        final GigaSpace gigaSpace = ControllerUtils.xapCache.get();
+        final RequestBodyStream body = requestBody == null ? null : new RequestBodyStream(requestBody);
+        //a write which timed out would still go on, so the post is not timed out, it ends once the body was written
+        return async(ControllerUtils.bulkPool, "post", type, NO_TIMEOUT, body, new Callable<ResponseEntity<Map<String, Object>>>() {
+            @Override
+            public ResponseEntity<Map<String, Object>> call() throws TypeNotFoundException {
+                return write(gigaSpace, type, mode, modeHeader, body);
+            }
+        });
+    }
+
+    private ResponseEntity<Map<String, Object>> write(GigaSpace gigaSpace, String type, String mode, String modeHeader, InputStream requestBody) throws TypeNotFoundException {
         if (logger.isLoggable(Level.FINE))
             logger.fine("performing post, type: " + type);
         if (requestBody == null) {
             throw new RestException("Request body cannot be empty");
         }
-        GigaSpace gigaSpace = ControllerUtils.xapCache.get();
-        createAndWriteDocuments(gigaSpace, type, requestBody, WriteModifiers.UPDATE_OR_WRITE);
+        WriteMode writeMode = WriteMode.parse(mode, modeHeader);
+        if (writeMode == WriteMode.BUFFERED) {
+            int buffered = bufferDocuments(gigaSpace, type, requestBody);
+            RequestMetrics.documents(buffered);
+            Map<String, Object> data = new HashMap<String, Object>();
+            data.put("buffered", buffered);
+            Map<String, Object> result = new HashMap<String, Object>();
+            result.put("status", "success");
+            result.put("data", data);
+            return new ResponseEntity<Map<String, Object>>(result, HttpStatus.ACCEPTED);
+        }
+        List<ChunkResult> chunks;
+        HttpStatus status;
+        if (writeMode == WriteMode.ONEWAY) {
+            chunks = createAndWriteDocuments(gigaSpace, type, requestBody, WriteModifiers.UPDATE_OR_WRITE.add(WriteModifiers.ONE_WAY));
+            ControllerUtils.writeStats.onewayWritten(chunks);
+            status = HttpStatus.ACCEPTED;
+        } else {
+            chunks = createAndWriteDocuments(gigaSpace, type, requestBody, WriteModifiers.UPDATE_OR_WRITE);
+            status = HttpStatus.OK;
+        }
+        Map<String, Object> data = chunkedWriteData(chunks);
+        RequestMetrics.documents((Integer) data.get("written"));
+        throwIfPartiallyWritten(chunks);
+        Map<String, Object> result = new HashMap<String, Object>();
+        result.put("status", "success");
+        result.put("data", data);
+        return new ResponseEntity<Map<String, Object>>(result, status);
+    }
+
+    /**
+     * REST STATS request handler, returns the counters of the gateway
+     */
+    @ApiMethod(
+            path = "_stats",
+            verb = ApiVerb.GET,
+            description = "Returns the counters of the documents written without waiting for the space, of the ingestion buffer and of the response cache", produces = {MediaType.APPLICATION_JSON_VALUE}
+    )
+    @RequestMapping(value = "/_stats", method = RequestMethod.GET, produces = {MediaType.APPLICATION_JSON_VALUE})
+    public
+    @ResponseBody
+    Map<String, Object> stats() {
+        Map<String, Object> data = new LinkedHashMap<String, Object>();
+        data.put("writes", ControllerUtils.writeStats.toMap());
+        data.put("buffer", ControllerUtils.ingestionBuffer.toMap());
+        data.put("cache", ControllerUtils.responseCache.toMap());
+        Map<String, Object> pools = new LinkedHashMap<String, Object>();
+        pools.put("point", ControllerUtils.pointPool.toMap());
+        pools.put("bulk", ControllerUtils.bulkPool.toMap());
+        data.put("pools", pools);
+        Map<String, Object> result = new HashMap<String, Object>();
+        result.put("status", "success");
+        result.put("data", data);
+        return result;
+    }
+
+    /**
+     * REST METRICS request handler, returns the latency histograms of the requests per endpoint, type and phase:
+     * { "status" : "success", "data" : [{ "endpoint" : "getById", "type" : "Product", "phase" : "total", "count" : 10,
+     *   "p50" : 0.4, "p99" : 1.2, "p999" : 1.2, "max" : 1.2 }, ...] }, durations in milliseconds.
+     * The phases are total, parse, descriptor, space and serialize. The requests which failed before their type
+     * was found in space, such as the requests to types which do not exist, are counted under the type _unknown.
+     * <p/>
+     * With format=prometheus, or when the Accept header prefers text/plain or application/openmetrics-text over
+     * json as prometheus does, the histograms are returned in the prometheus text format.
+     */
+    @ApiMethod(
+            path = "_metrics",
+            verb = ApiVerb.GET,
+            description = "Returns the latency histograms of the requests per endpoint, type and phase, in json or in the prometheus text format"
+            , produces = {MediaType.APPLICATION_JSON_VALUE, PrometheusHttpMessageConverter.TEXT_PROMETHEUS_VALUE}
+    )
+    @RequestMapping(value = "/_metrics", method = RequestMethod.GET)
+    public
+    @ResponseBody
+    Object metrics(
+            @ApiQueryParam(name = "format", description = "json (default) or prometheus")
+            @RequestParam(value = FORMAT_PARAM, required = false) String format,
+            @RequestHeader(value = "Accept", required = false) String accept) {
+        if (format != null ? "prometheus".equalsIgnoreCase(format) : prefersPrometheus(accept)) {
+            return ControllerUtils.metrics;
+        }
+        Map<String, Object> result = new HashMap<String, Object>();
+        result.put("status", "success");
+        result.put("data", ControllerUtils.metrics.toList());
+        return result;
+    }
+
+    /**
+     * REST SLOW LOG request handler, returns the most recent requests which took at least slow_operation_threshold
+     * milliseconds, the most recent first:
+     * { "status" : "success", "data" : { "threshold" : 1000, "logged" : 1, "operations" : [{ "timestamp" : 1428483012345,
+     *   "endpoint" : "getByQuery", "type" : "Product", "query" : "Price > 10", "max" : 2147483647, "documents" : 125000,
+     *   "bytes" : 28311552, "status" : 200, "duration" : 8012.5, "phases" : { "handler" : 7503.2, "space" : 7490.1 } }] } }
+     */
+    @ApiMethod(
+            path = "_slowlog",
+            verb = ApiVerb.GET,
+            description = "Returns the most recent requests which took at least slow_operation_threshold milliseconds", produces = {MediaType.APPLICATION_JSON_VALUE}
+    )
+    @RequestMapping(value = "/_slowlog", method = RequestMethod.GET, produces = {MediaType.APPLICATION_JSON_VALUE})
+    public
+    @ResponseBody
+    Map<String, Object> slowLog() {
         Map<String, Object> result = new HashMap<String, Object>();
         result.put("status", "success");
+        result.put("data", ControllerUtils.slowOperations.toMap());
         return result;
     }
 
+    private static boolean prefersPrometheus(String accept) {
+        if (accept == null) {
+            return false;
+        }
+        List<MediaType> mediaTypes;
+        try {
+            mediaTypes = MediaType.parseMediaTypes(accept);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        MediaType.sortBySpecificityAndQuality(mediaTypes);
+        for (MediaType mediaType : mediaTypes) {
+            if (mediaType.includes(MediaType.APPLICATION_JSON)) {
+                return false;
+            }
+            if (mediaType.isCompatibleWith(MediaType.TEXT_PLAIN) || "openmetrics-text".equals(mediaType.getSubtype())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The space call runs on the pool once the handler returned, and the container thread was released.
+     * It is timed in the request metrics of the endpoint and type from the moment the request entered the gateway,
+     * so the time the call waits in the queue of the pool is part of its total. A request which times out, even
+     * before its call started, is recorded and logged as slow by the timeout callback.
+     *
+     * @throws ServerBusyException if the pool already holds as many calls as it may run and queue
+     */
+    private static <T> WebAsyncTask<T> async(AsyncPool pool, String endpoint, String type, Callable<T> callable) {
+        return async(pool, endpoint, type, ControllerUtils.asyncTimeout, null, callable);
+    }
+
+    /**
+     * @param timeout the timeout of the request in milliseconds, {@link #NO_TIMEOUT} if it never times out
+     * @param body    the body read by the call, detached once the request completed, or null
+     */
+    private static <T> WebAsyncTask<T> async(AsyncPool pool, final String endpoint, final String type, long timeout,
+                                             final RequestBodyStream body, final Callable<T> callable) {
+        final HttpServletRequest request = currentRequest();
+        final AsyncPool.Ticket ticket = pool.reserve();
+        Long start = request == null ? null : (Long) request.getAttribute(RequestMetrics.START_ATTRIBUTE);
+        final RequestMetrics.Timer timer = start == null ? ControllerUtils.metrics.start(endpoint, type)
+                : ControllerUtils.metrics.start(endpoint, type, start.longValue());
+        if (request != null) {
+            //completed by the slow operation filter once the response was written
+            request.setAttribute(RequestMetrics.TIMER_ATTRIBUTE, timer);
+        }
+        WebAsyncTask<T> task = new WebAsyncTask<T>(timeout, pool.getExecutor(), new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                if (!ticket.start()) {
+                    //the request timed out while the call was queued, nobody waits for its result
+                    return null;
+                }
+                RequestMetrics.attach(timer);
+                try {
+                    T result = callable.call();
+                    //the space accepted the type
+                    RequestMetrics.typeResolved(type);
+                    return result;
+                } finally {
+                    RequestMetrics.detach(timer);
+                    if (request == null && ControllerUtils.metrics.stop(timer)) {
+                        ControllerUtils.slowOperations.completed(timer, null, -1);
+                    }
+                    ticket.finish();
+                }
+            }
+        });
+        task.onTimeout(new Callable<T>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public T call() {
+                if (body != null) {
+                    body.detach();
+                }
+                //the timed out response is not dispatched through the slow operation filter
+                if (ControllerUtils.metrics.stop(timer)) {
+                    ControllerUtils.slowOperations.completed(timer, HttpStatus.SERVICE_UNAVAILABLE.value(), -1);
+                }
+                //no result of its own, the request ends with the default timeout response, 503
+                return (T) CallableProcessingInterceptor.RESULT_NONE;
+            }
+        });
+        task.onCompletion(new Runnable() {
+            @Override
+            public void run() {
+                ticket.cancel();
+                if (body != null) {
+                    //the container may recycle the request, and its stream, once it completed
+                    body.detach();
+                }
+            }
+        });
+        return task;
+    }
+
+    /**
+     * @return the request handled by the current thread, or null if the controller is not called by the dispatcher
+     */
+    private static HttpServletRequest currentRequest() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        return attributes instanceof ServletRequestAttributes ? ((ServletRequestAttributes) attributes).getRequest() : null;
+    }
+
+    private static Map<String, Object> chunkedWriteData(List<ChunkResult> chunks) {
+        int written = 0;
+        for (ChunkResult chunk : chunks) {
+            if (chunk.getError() == null) {
+                written += chunk.getDocuments();
+            }
+        }
+        Map<String, Object> data = new LinkedHashMap<String, Object>();
+        data.put("written", written);
+        data.put("chunks", chunks);
+        return data;
+    }
+
     private RuntimeException translateDataAccessException(GigaSpace gigaSpace, DataAccessException e, String type) {
-        if (gigaSpace.getTypeManager().getTypeDescriptor(type) == null) {
+        if (ControllerUtils.typeCache.get(gigaSpace, type) == null) {
             return new TypeNotFoundException(type);
         } else {
             return e;
@@ -851,6 +1895,20 @@ public class SpaceAPIController {
     }
 
 
+    /**
+     * SpaceNotFoundException Handler, returns an error response to the client
+     */
+    @ExceptionHandler(SpaceNotFoundException.class)
+    @ResponseStatus(value = HttpStatus.NOT_FOUND)
+    public
+    @ResponseBody
+    ErrorResponse resolveSpaceNotFoundException(SpaceNotFoundException e) throws IOException {
+        if (logger.isLoggable(Level.FINE))
+            logger.fine("space: " + e.getSpaceName() + " is not configured, returning error response");
+
+        return new ErrorResponse(new ErrorMessage("Space: " + e.getSpaceName() + " is not configured in the gateway"));
+    }
+
     /**
      * ObjectNotFoundException Handler, returns an error response to the client
      *
@@ -896,6 +1954,100 @@ public class SpaceAPIController {
         return new ErrorResponse(new ExceptionMessage(e));
     }
 
+    /**
+     * RemoteDataAccessException Handler, checks the space in the background. Its proxy is dropped, so the next
+     * request reconnects, only if the space is unreachable.
+     */
+    @ExceptionHandler(RemoteDataAccessException.class)
+    @ResponseStatus(value = HttpStatus.INTERNAL_SERVER_ERROR)
+    public
+    @ResponseBody
+    ErrorResponse resolveRemoteDataAccessException(RemoteDataAccessException e) throws IOException {
+        if (logger.isLoggable(Level.WARNING))
+            logger.log(Level.WARNING, "received RemoteDataAccessException exception", e);
+
+        ControllerUtils.xapCache.checkHealth();
+        return new ErrorResponse(new ExceptionMessage(e));
+    }
+
+    /**
+     * BufferFullException Handler, asks the client to retry once the ingestion buffer has room
+     */
+    @ExceptionHandler(BufferFullException.class)
+    @ResponseStatus(value = HttpStatus.TOO_MANY_REQUESTS)
+    public
+    @ResponseBody
+    ErrorResponse resolveBufferFullException(BufferFullException e) throws IOException {
+        if (logger.isLoggable(Level.FINE))
+            logger.fine("ingestion buffer of type: " + e.getTypeName() + " is full, returning error response");
+
+        return new ErrorResponse(new ErrorMessage("Ingestion buffer of type: " + e.getTypeName() + " is full (capacity "
+                + e.getCapacity() + " entries), retry later"));
+    }
+
+    /**
+     * CursorMismatchException Handler, the cursor can only be resumed with the query it was opened with
+     */
+    @ExceptionHandler(CursorMismatchException.class)
+    @ResponseStatus(value = HttpStatus.BAD_REQUEST)
+    public
+    @ResponseBody
+    ErrorResponse resolveCursorMismatchException(CursorMismatchException e) throws IOException {
+        if (logger.isLoggable(Level.FINE))
+            logger.fine("cursor: " + e.getToken() + " was resumed by another query, returning error response");
+
+        return new ErrorResponse(new ErrorMessage("Cursor " + e.getToken() + " was opened with another type, query, fields,"
+                + " routing or space, resume it with the ones it was opened with"));
+    }
+
+    /**
+     * ServerBusyException Handler, asks the client to retry once the async pool has room
+     */
+    @ExceptionHandler(ServerBusyException.class)
+    @ResponseStatus(value = HttpStatus.SERVICE_UNAVAILABLE)
+    public
+    @ResponseBody
+    ErrorResponse resolveServerBusyException(ServerBusyException e) throws IOException {
+        if (logger.isLoggable(Level.FINE))
+            logger.fine("async pool: " + e.getPoolName() + " is full, returning error response");
+
+        return new ErrorResponse(new ErrorMessage("Too many requests in progress (" + e.getPoolName() + " pool capacity "
+                + e.getCapacity() + "), retry later"));
+    }
+
+    /**
+     * PayloadTooLargeException Handler, the posted documents can never fit in the ingestion buffer
+     */
+    @ExceptionHandler(PayloadTooLargeException.class)
+    @ResponseStatus(value = HttpStatus.REQUEST_ENTITY_TOO_LARGE)
+    public
+    @ResponseBody
+    ErrorResponse resolvePayloadTooLargeException(PayloadTooLargeException e) throws IOException {
+        if (logger.isLoggable(Level.FINE))
+            logger.fine("posted documents exceed the ingestion buffer of type: " + e.getTypeName() + ", returning error response");
+
+        return new ErrorResponse(new ErrorMessage("Too many documents for the ingestion buffer of type: " + e.getTypeName()
+                + " (capacity " + e.getCapacity() + " entries), post them in smaller requests"));
+    }
+
+    /**
+     * PartialWriteException Handler, returns the result of every chunk along with the error
+     */
+    @ExceptionHandler(PartialWriteException.class)
+    @ResponseStatus(value = HttpStatus.INTERNAL_SERVER_ERROR)
+    public
+    @ResponseBody
+    Map<String, Object> resolvePartialWriteException(PartialWriteException e) throws IOException {
+        if (logger.isLoggable(Level.WARNING))
+            logger.log(Level.WARNING, "received PartialWriteException exception", e.getMessage());
+
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+        result.put("status", "error");
+        result.put("error", new ErrorMessage(e.getMessage()));
+        result.put("data", chunkedWriteData(e.getChunks()));
+        return result;
+    }
+
     @ExceptionHandler(TypeAlreadyRegisteredException.class)
     @ResponseStatus(value = HttpStatus.INTERNAL_SERVER_ERROR)
     public
@@ -943,26 +2095,65 @@ public class SpaceAPIController {
 
     /**
      * helper method that creates space documents from the httpRequest payload and writes them to space.
+     * Documents are written chunk by chunk while the payload is being read.
      *
      * @param type
      * @param updateModifiers
+     * @return the result of each chunk
      * @throws TypeNotFoundException
      */
-    private void createAndWriteDocuments(GigaSpace gigaSpace, String type, String body, WriteModifiers updateModifiers)
+    private List<ChunkResult> createAndWriteDocuments(GigaSpace gigaSpace, String type, InputStream body, WriteModifiers updateModifiers)
             throws TypeNotFoundException {
         logger.info("creating space Documents from payload");
-        SpaceDocument[] spaceDocuments = ControllerUtils.createSpaceDocuments(type, body, gigaSpace);
-        if (spaceDocuments != null && spaceDocuments.length > 0) {
-            try {
-                gigaSpace.writeMultiple(spaceDocuments, Lease.FOREVER, updateModifiers);
-            } catch (DataAccessException e) {
-                throw translateDataAccessException(gigaSpace, e, type);
+        SpaceDocumentReader reader = ControllerUtils.createSpaceDocumentReader(type, body, gigaSpace);
+        List<ChunkResult> chunks;
+        try {
+            chunks = ControllerUtils.chunkedWriter.write(gigaSpace, reader, updateModifiers);
+        } finally {
+            reader.close();
+            ControllerUtils.responseCache.invalidate(gigaSpace, type);
+        }
+        if (logger.isLoggable(Level.FINE))
+            logger.fine(chunks.isEmpty() ? "did not write anything to space" : "wrote " + chunks.size() + " chunks to space");
+        return chunks;
+    }
+
+    /**
+     * helper method that queues the space documents of the httpRequest payload in the ingestion buffer.
+     * At most buffer_capacity documents are read, a larger payload can never fit in the buffer.
+     *
+     * @return the number of queued documents
+     * @throws PayloadTooLargeException if there are more documents than buffer_capacity
+     * @throws BufferFullException if the buffer of the type has no room for the documents
+     */
+    private int bufferDocuments(GigaSpace gigaSpace, String type, InputStream body) throws TypeNotFoundException {
+        SpaceDocumentReader reader = ControllerUtils.createSpaceDocumentReader(type, body, gigaSpace);
+        try {
+            long start = System.nanoTime();
+            SpaceDocument[] documents = reader.nextBatch(ControllerUtils.ingestionBuffer.getCapacity() + 1);
+            RequestMetrics.phase(RequestMetrics.Phase.PARSE, start);
+            if (documents == null) {
+                return 0;
             }
-            if (logger.isLoggable(Level.FINE))
-                logger.fine("wrote space documents to space");
-        } else {
-            if (logger.isLoggable(Level.FINE))
-                logger.fine("did not write anything to space");
+            ControllerUtils.ingestionBuffer.add(gigaSpace, type, documents);
+            return documents.length;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * @throws PartialWriteException if some of the chunks failed
+     */
+    private static void throwIfPartiallyWritten(List<ChunkResult> chunks) {
+        int failed = 0;
+        for (ChunkResult chunk : chunks) {
+            if (chunk.getError() != null) {
+                failed++;
+            }
+        }
+        if (failed > 0) {
+            throw new PartialWriteException(chunks, failed);
         }
     }
 
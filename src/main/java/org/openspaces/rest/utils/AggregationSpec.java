@@ -0,0 +1,170 @@
+/*
+ * Copyright 2015 GigaSpaces Technologies Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at *
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License."
+ */
+package org.openspaces.rest.utils;
+
+import com.gigaspaces.query.aggregators.AggregationResult;
+import com.gigaspaces.query.aggregators.AggregationSet;
+import com.gigaspaces.query.aggregators.GroupByAggregator;
+import com.gigaspaces.query.aggregators.GroupByResult;
+import com.gigaspaces.query.aggregators.GroupByValue;
+import org.openspaces.rest.exceptions.RestException;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The aggregations of an aggregate request, parsed from a comma separated list such as
+ * count,sum(Price),avg(Price),min(Price),max(Price).
+ * <p/>
+ * count counts the matching entries and count(path) the entries in which path is not null. The aggregations are
+ * mapped onto the space aggregation API, so they run inside each partition and only the partial results are
+ * merged by the gateway. The result of each aggregation is keyed by its name as written in the request.
+ *
+ * @since 12.0
+ */
+public class AggregationSpec {
+    private static final String SUPPORTED = "Supported aggregations are count, count(path), sum(path), avg(path), min(path) and max(path)";
+
+    private final List<String> names = new ArrayList<String>();
+    private final List<String> functions = new ArrayList<String>();
+    private final List<String> paths = new ArrayList<String>();
+
+    /**
+     * @param aggregations comma separated list of aggregations, count if null or empty
+     * @throws RestException if one of the aggregations is not supported
+     */
+    public AggregationSpec(String aggregations) {
+        if (aggregations != null) {
+            for (String aggregation : aggregations.split(",")) {
+                String trimmed = aggregation.trim();
+                if (trimmed.length() > 0) {
+                    add(trimmed);
+                }
+            }
+        }
+        if (names.isEmpty()) {
+            add("count");
+        }
+    }
+
+    private void add(String aggregation) {
+        String function;
+        String path = null;
+        int open = aggregation.indexOf('(');
+        if (open == -1) {
+            function = aggregation;
+        } else {
+            if (!aggregation.endsWith(")") || open == aggregation.length() - 2) {
+                throw new RestException("Illegal aggregation [" + aggregation + "]. " + SUPPORTED);
+            }
+            function = aggregation.substring(0, open).trim();
+            path = aggregation.substring(open + 1, aggregation.length() - 1).trim();
+        }
+        function = function.toLowerCase(Locale.ENGLISH);
+        boolean supported = "count".equals(function)
+                || (path != null && ("sum".equals(function) || "avg".equals(function)
+                || "min".equals(function) || "max".equals(function)));
+        if (!supported) {
+            throw new RestException("Unsupported aggregation [" + aggregation + "]. " + SUPPORTED);
+        }
+        names.add(aggregation);
+        functions.add(function);
+        paths.add(path);
+    }
+
+    public AggregationSet toAggregationSet() {
+        AggregationSet aggregationSet = new AggregationSet();
+        for (int i = 0; i < functions.size(); i++) {
+            String function = functions.get(i);
+            String path = paths.get(i);
+            if ("count".equals(function)) {
+                if (path == null) {
+                    aggregationSet.count();
+                } else {
+                    aggregationSet.count(path);
+                }
+            } else if ("sum".equals(function)) {
+                aggregationSet.sum(path);
+            } else if ("avg".equals(function)) {
+                aggregationSet.average(path);
+            } else if ("min".equals(function)) {
+                aggregationSet.minValue(path);
+            } else {
+                aggregationSet.maxValue(path);
+            }
+        }
+        return aggregationSet;
+    }
+
+    public GroupByAggregator toGroupByAggregator(String[] groupBy) {
+        GroupByAggregator aggregator = new GroupByAggregator().groupBy(groupBy);
+        for (int i = 0; i < functions.size(); i++) {
+            String function = functions.get(i);
+            String path = paths.get(i);
+            if ("count".equals(function)) {
+                if (path == null) {
+                    aggregator.selectCount();
+                } else {
+                    aggregator.selectCount(path);
+                }
+            } else if ("sum".equals(function)) {
+                aggregator.selectSum(path);
+            } else if ("avg".equals(function)) {
+                aggregator.selectAverage(path);
+            } else if ("min".equals(function)) {
+                aggregator.selectMinValue(path);
+            } else {
+                aggregator.selectMaxValue(path);
+            }
+        }
+        return aggregator;
+    }
+
+    /**
+     * @return the result of each aggregation, keyed by its name
+     */
+    public Map<String, Object> toMap(AggregationResult aggregationResult) {
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+        for (int i = 0; i < names.size(); i++) {
+            result.put(names.get(i), aggregationResult.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * @return an entry per group, holding the values of the group by paths and the result of each aggregation:
+     * { "group" : { "Category" : "Hardware" }, "count" : 3, "sum(Price)" : 30.5 }
+     */
+    public List<Map<String, Object>> toList(GroupByResult groupByResult, String[] groupBy) {
+        List<Map<String, Object>> groups = new ArrayList<Map<String, Object>>();
+        for (GroupByValue groupByValue : groupByResult) {
+            Map<String, Object> key = new LinkedHashMap<String, Object>();
+            for (int i = 0; i < groupBy.length; i++) {
+                key.put(groupBy[i], groupByValue.getKey().get(i));
+            }
+            Map<String, Object> group = new LinkedHashMap<String, Object>();
+            group.put("group", key);
+            for (int i = 0; i < names.size(); i++) {
+                group.put(names.get(i), groupByValue.get(i));
+            }
+            groups.add(group);
+        }
+        return groups;
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2015 GigaSpaces Technologies Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at *
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License."
+ */
+package org.openspaces.rest.utils;
+
+import org.openspaces.rest.exceptions.ServerBusyException;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of threads which runs the space calls of asynchronous requests, with a bounded backlog.
+ * <p/>
+ * At most poolSize calls run at a time and at most queueCapacity more wait for a thread. A request which finds
+ * the backlog full is rejected with a {@link ServerBusyException} before it goes asynchronous, so a burst of slow
+ * requests is turned away instead of queueing without bound. A request holds its place in the backlog until its
+ * call returns, or until the request completes before its call started, e.g. when it timed out in the queue.
+ * The call of such a request is skipped once it reaches a thread.
+ *
+ * @since 12.0
+ */
+public class AsyncPool {
+    private static final int NEW = 0;
+    private static final int RUNNING = 1;
+    private static final int DONE = 2;
+
+    private final String name;
+    private final ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    private final AtomicInteger backlog = new AtomicInteger();
+    private final AtomicLong rejected = new AtomicLong();
+    private volatile int queueCapacity;
+
+    public AsyncPool(String name, int poolSize, int queueCapacity) {
+        this.name = name;
+        this.queueCapacity = queueCapacity;
+        executor.setThreadNamePrefix("rest-" + name + "-");
+        executor.setDaemon(true);
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.initialize();
+    }
+
+    public AsyncTaskExecutor getExecutor() {
+        return executor;
+    }
+
+    public synchronized void setPoolSize(int poolSize) {
+        //the core size can never exceed the max size
+        if (poolSize > executor.getMaxPoolSize()) {
+            executor.setMaxPoolSize(poolSize);
+            executor.setCorePoolSize(poolSize);
+        } else {
+            executor.setCorePoolSize(poolSize);
+            executor.setMaxPoolSize(poolSize);
+        }
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Reserves a place in the backlog for the call of a request
+     *
+     * @throws ServerBusyException if the backlog is full
+     */
+    public Ticket reserve() {
+        int capacity = executor.getMaxPoolSize() + queueCapacity;
+        while (true) {
+            int current = backlog.get();
+            if (current >= capacity) {
+                rejected.incrementAndGet();
+                throw new ServerBusyException(name, capacity);
+            }
+            if (backlog.compareAndSet(current, current + 1)) {
+                return new Ticket();
+            }
+        }
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+        result.put("poolSize", executor.getMaxPoolSize());
+        result.put("queueCapacity", queueCapacity);
+        result.put("active", executor.getActiveCount());
+        result.put("backlog", backlog.get());
+        result.put("rejected", rejected.get());
+        return result;
+    }
+
+    /**
+     * The place of a request in the backlog, released exactly once
+     */
+    public class Ticket {
+        private final AtomicInteger state = new AtomicInteger(NEW);
+
+        private Ticket() {
+        }
+
+        /**
+         * @return true if the call should run, false if the request already completed
+         */
+        public boolean start() {
+            return state.compareAndSet(NEW, RUNNING);
+        }
+
+        /**
+         * The call returned
+         */
+        public void finish() {
+            if (state.compareAndSet(RUNNING, DONE)) {
+                backlog.decrementAndGet();
+            }
+        }
+
+        /**
+         * The request completed, its place is released unless its call is running
+         */
+        public void cancel() {
+            if (state.compareAndSet(NEW, DONE)) {
+                backlog.decrementAndGet();
+            }
+        }
+    }
+}
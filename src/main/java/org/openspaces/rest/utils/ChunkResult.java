@@ -0,0 +1,59 @@
+/*
+ * Copyright 2015 GigaSpaces Technologies Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at *
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License."
+ */
+package org.openspaces.rest.utils;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * The outcome of writing one chunk of a POST request to space.
+ * offset is the position of the first document of the chunk in the request body.
+ *
+ * @since 12.0
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ChunkResult {
+    private final int chunk;
+    private final int offset;
+    private final int documents;
+    private final ErrorMessage error;
+
+    public ChunkResult(int chunk, int offset, int documents, ErrorMessage error) {
+        this.chunk = chunk;
+        this.offset = offset;
+        this.documents = documents;
+        this.error = error;
+    }
+
+    public int getChunk() {
+        return chunk;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getDocuments() {
+        return documents;
+    }
+
+    public String getStatus() {
+        return error == null ? "success" : "error";
+    }
+
+    public ErrorMessage getError() {
+        return error;
+    }
+}
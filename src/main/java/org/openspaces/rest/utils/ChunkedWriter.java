@@ -0,0 +1,221 @@
+/*
+ * Copyright 2015 GigaSpaces Technologies Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at *
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License."
+ */
+package org.openspaces.rest.utils;
+
+import com.gigaspaces.client.WriteModifiers;
+import com.gigaspaces.document.SpaceDocument;
+import net.jini.core.lease.Lease;
+import org.openspaces.core.GigaSpace;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes the documents of a request to space in chunks of chunkSize documents.
+ * <p/>
+ * Chunks are pipelined: while up to maxChunksInFlight chunks of a request are being written, the next chunk is
+ * read from the request body. Each chunk is a separate writeMultiple call, so a huge request does not run into
+ * space side timeouts and a chunk which is rejected by the space does not fail the other chunks.
+ * The result of every chunk is returned in the order of the chunks in the request.
+ * <p/>
+ * Chunks are written by a pool of at most poolSize threads, shared by all the requests. When all of them are
+ * busy the request thread writes its chunk itself, so a burst of large requests slows down instead of piling
+ * up threads.
+ *
+ * @since 12.0
+ */
+public class ChunkedWriter {
+    private static final Logger logger = Logger.getLogger(ChunkedWriter.class.getName());
+
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(32, 32, 60, TimeUnit.SECONDS,
+            new SynchronousQueue<Runnable>(), new ThreadFactory() {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "rest-chunk-writer-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }, new ThreadPoolExecutor.CallerRunsPolicy());
+    private volatile int chunkSize = 1000;
+    private volatile int maxChunksInFlight = 4;
+
+    public ChunkedWriter() {
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    public void setMaxChunksInFlight(int maxChunksInFlight) {
+        this.maxChunksInFlight = maxChunksInFlight;
+    }
+
+    public synchronized void setPoolSize(int poolSize) {
+        //the core size can never exceed the max size
+        if (poolSize > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(poolSize);
+            executor.setCorePoolSize(poolSize);
+        } else {
+            executor.setCorePoolSize(poolSize);
+            executor.setMaximumPoolSize(poolSize);
+        }
+    }
+
+    /**
+     * Writes all the documents of the reader. If reading the body fails after some chunks were read, those chunks
+     * are still written and their results are returned, followed by a failed chunk which holds the parse error and
+     * the offset of the first document which could not be read. If the first chunk cannot be read the failure is
+     * thrown, nothing was written.
+     * <p/>
+     * Reading the chunks is timed as the parse phase of the current request, and writing them as its space phase,
+     * also when they are written by the chunk writer threads.
+     *
+     * @return the result of each chunk
+     */
+    public List<ChunkResult> write(GigaSpace gigaSpace, SpaceDocumentReader reader, WriteModifiers modifiers) {
+        int size = chunkSize;
+        Semaphore inFlight = maxChunksInFlight > 1 ? new Semaphore(maxChunksInFlight) : null;
+        List<Future<ChunkResult>> futures = new ArrayList<Future<ChunkResult>>();
+        List<ChunkResult> results = new ArrayList<ChunkResult>();
+        int chunk = 0;
+        int offset = 0;
+        RequestMetrics.Timer timer = RequestMetrics.current();
+        ChunkResult parseFailure = null;
+        try {
+            SpaceDocument[] documents;
+            while (true) {
+                try {
+                    documents = nextBatch(reader, size);
+                } catch (RuntimeException e) {
+                    if (chunk == 0) {
+                        throw e;
+                    }
+                    if (logger.isLoggable(Level.WARNING))
+                        logger.log(Level.WARNING, "failed to read chunk " + chunk + " of the request body", e);
+                    parseFailure = new ChunkResult(chunk, offset, 0, new ErrorMessage("Failed to read the request body at document "
+                            + offset + ": " + e.getMessage()));
+                    break;
+                }
+                if (documents == null) {
+                    break;
+                }
+                ChunkTask task = new ChunkTask(gigaSpace, documents, chunk++, offset, modifiers, inFlight, timer);
+                offset += documents.length;
+                if (inFlight == null) {
+                    results.add(task.call());
+                } else {
+                    inFlight.acquireUninterruptibly();
+                    futures.add(executor.submit(task));
+                }
+            }
+        } finally {
+            for (Future<ChunkResult> future : futures) {
+                results.add(await(future));
+            }
+        }
+        if (parseFailure != null) {
+            results.add(parseFailure);
+        }
+        return results;
+    }
+
+    private static SpaceDocument[] nextBatch(SpaceDocumentReader reader, int size) {
+        long start = System.nanoTime();
+        try {
+            return reader.nextBatch(size);
+        } finally {
+            RequestMetrics.phase(RequestMetrics.Phase.PARSE, start);
+        }
+    }
+
+    private static ChunkResult await(Future<ChunkResult> future) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return future.get();
+                } catch (InterruptedException e) {
+                    //the chunk is already being written, its result is still reported
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    //chunk tasks catch their own failures
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static class ChunkTask implements Callable<ChunkResult> {
+        private final GigaSpace gigaSpace;
+        private final SpaceDocument[] documents;
+        private final int chunk;
+        private final int offset;
+        private final WriteModifiers modifiers;
+        private final Semaphore inFlight;
+        private final RequestMetrics.Timer timer;
+
+        private ChunkTask(GigaSpace gigaSpace, SpaceDocument[] documents, int chunk, int offset,
+                          WriteModifiers modifiers, Semaphore inFlight, RequestMetrics.Timer timer) {
+            this.gigaSpace = gigaSpace;
+            this.documents = documents;
+            this.chunk = chunk;
+            this.offset = offset;
+            this.modifiers = modifiers;
+            this.inFlight = inFlight;
+            this.timer = timer;
+        }
+
+        @Override
+        public ChunkResult call() {
+            long start = System.nanoTime();
+            try {
+                gigaSpace.writeMultiple(documents, Lease.FOREVER, modifiers);
+                if (logger.isLoggable(Level.FINE))
+                    logger.fine("wrote chunk " + chunk + " of " + documents.length + " space documents to space");
+                return new ChunkResult(chunk, offset, documents.length, null);
+            } catch (Exception e) {
+                if (logger.isLoggable(Level.WARNING))
+                    logger.log(Level.WARNING, "failed to write chunk " + chunk + " of " + documents.length + " space documents", e);
+                return new ChunkResult(chunk, offset, documents.length, new ErrorMessage(e.toString()));
+            } finally {
+                if (timer != null) {
+                    timer.add(RequestMetrics.Phase.SPACE, System.nanoTime() - start);
+                }
+                if (inFlight != null) {
+                    inFlight.release();
+                }
+            }
+        }
+    }
+}
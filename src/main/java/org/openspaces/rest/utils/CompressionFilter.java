@@ -0,0 +1,448 @@
+/*
+ * Copyright 2015 GigaSpaces Technologies Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at *
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License."
+ */
+package org.openspaces.rest.utils;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Locale;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compresses responses and decompresses request bodies.
+ * <p/>
+ * Responses are compressed with gzip or deflate, as negotiated by the Accept-Encoding header, once their body
+ * grows beyond compression_threshold bytes. Smaller responses are sent as is, and so are streamed responses
+ * which are flushed to the client before they reach the threshold. A negative threshold disables compression.
+ * <p/>
+ * Asynchronous requests are supported, the filter should also be mapped to the ASYNC dispatcher so the body is
+ * finished once the result was written.
+ * <p/>
+ * Request bodies sent with Content-Encoding gzip or deflate are inflated before they reach the controller, so
+ * a compressed body can be posted with:
+ * curl -H "Content-Encoding: gzip" -H "Content-Type: application/json" --data-binary @docs.json.gz http://localhost:8080/Item
+ *
+ * @since 12.0
+ */
+public class CompressionFilter implements Filter {
+    private static final String GZIP = "gzip";
+    private static final String DEFLATE = "deflate";
+    private static final String CONTENT_ENCODING = "Content-Encoding";
+    private static final String CONTENT_LENGTH = "Content-Length";
+    private static final String RESPONSE_ATTRIBUTE = CompressionFilter.class.getName() + ".response";
+
+    private static volatile int threshold = 1024;
+
+    public static int getThreshold() {
+        return threshold;
+    }
+
+    public static void setThreshold(int threshold) {
+        CompressionFilter.threshold = threshold;
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+        //an asynchronous request is dispatched again to write its result, through the response wrapped at first
+        CompressingResponse asyncResponse = (CompressingResponse) request.getAttribute(RESPONSE_ATTRIBUTE);
+        if (asyncResponse != null) {
+            try {
+                chain.doFilter(request, response);
+            } finally {
+                finishUnlessAsync(request, asyncResponse);
+            }
+            return;
+        }
+
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        HttpServletResponse httpResponse = (HttpServletResponse) response;
+
+        String contentEncoding = httpRequest.getHeader(CONTENT_ENCODING);
+        if (contentEncoding != null && !"identity".equalsIgnoreCase(contentEncoding.trim())) {
+            String coding = contentEncoding.trim().toLowerCase(Locale.ENGLISH);
+            if (!isGzip(coding) && !DEFLATE.equals(coding)) {
+                httpResponse.sendError(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE,
+                        "Unsupported Content-Encoding [" + contentEncoding + "], supported encodings are gzip and deflate");
+                return;
+            }
+            request = new DecompressingRequest(httpRequest, isGzip(coding));
+        }
+
+        int threshold = CompressionFilter.threshold;
+        if (threshold < 0) {
+            chain.doFilter(request, response);
+            return;
+        }
+        httpResponse.addHeader("Vary", "Accept-Encoding");
+        String coding = negotiate(httpRequest.getHeader("Accept-Encoding"));
+        if (coding == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+        CompressingResponse compressingResponse = new CompressingResponse(httpResponse, coding, threshold);
+        request.setAttribute(RESPONSE_ATTRIBUTE, compressingResponse);
+        try {
+            chain.doFilter(request, compressingResponse);
+        } finally {
+            finishUnlessAsync(request, compressingResponse);
+        }
+    }
+
+    /**
+     * The body of a request which went asynchronous is written by a later dispatch, it is finished there
+     */
+    private static void finishUnlessAsync(ServletRequest request, CompressingResponse response) throws IOException {
+        if (!request.isAsyncStarted()) {
+            request.removeAttribute(RESPONSE_ATTRIBUTE);
+            response.finish();
+        }
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    private static boolean isGzip(String coding) {
+        return GZIP.equals(coding) || "x-gzip".equals(coding);
+    }
+
+    /**
+     * @return gzip or deflate if accepted by the client, gzip is preferred, or null if neither of them is
+     */
+    static String negotiate(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        boolean deflate = false;
+        for (String token : acceptEncoding.split(",")) {
+            String[] parts = token.split(";");
+            String coding = parts[0].trim().toLowerCase(Locale.ENGLISH);
+            if (!isAccepted(parts)) {
+                continue;
+            }
+            if (isGzip(coding) || "*".equals(coding)) {
+                return GZIP;
+            }
+            if (DEFLATE.equals(coding)) {
+                deflate = true;
+            }
+        }
+        return deflate ? DEFLATE : null;
+    }
+
+    private static boolean isAccepted(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String parameter = parts[i].trim();
+            if (parameter.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2).trim()) > 0;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static class DecompressingRequest extends HttpServletRequestWrapper {
+        private final boolean gzip;
+        private ServletInputStream inputStream;
+
+        private DecompressingRequest(HttpServletRequest request, boolean gzip) {
+            super(request);
+            this.gzip = gzip;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() throws IOException {
+            if (inputStream == null) {
+                final InputStream in = gzip ? new GZIPInputStream(super.getInputStream())
+                        : new InflaterInputStream(super.getInputStream());
+                inputStream = new ServletInputStream() {
+                    @Override
+                    public int read() throws IOException {
+                        return in.read();
+                    }
+
+                    @Override
+                    public int read(byte[] b, int off, int len) throws IOException {
+                        return in.read(b, off, len);
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        in.close();
+                    }
+                };
+            }
+            return inputStream;
+        }
+
+        //the length and encoding of the body the controller reads are not the ones the client sent
+        @Override
+        public int getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            if (CONTENT_ENCODING.equalsIgnoreCase(name) || CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                return null;
+            }
+            return super.getHeader(name);
+        }
+
+        @Override
+        @SuppressWarnings("rawtypes")
+        public Enumeration getHeaders(String name) {
+            if (CONTENT_ENCODING.equalsIgnoreCase(name) || CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                return Collections.enumeration(Collections.emptyList());
+            }
+            return super.getHeaders(name);
+        }
+    }
+
+    /**
+     * Holds the body in memory until it grows beyond the threshold, and only then decides to compress it
+     */
+    private static class CompressingResponse extends HttpServletResponseWrapper {
+        private final String coding;
+        private final int threshold;
+        private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private OutputStream out;
+        private ServletOutputStream outputStream;
+        private PrintWriter writer;
+        private boolean finishing;
+        private boolean finished;
+
+        private CompressingResponse(HttpServletResponse response, String coding, int threshold) {
+            super(response);
+            this.coding = coding;
+            this.threshold = threshold;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (writer != null) {
+                throw new IllegalStateException("getWriter() has already been called");
+            }
+            if (outputStream == null) {
+                outputStream = new ServletOutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        write(new byte[]{(byte) b}, 0, 1);
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        CompressingResponse.this.write(b, off, len);
+                    }
+
+                    @Override
+                    public void flush() throws IOException {
+                        CompressingResponse.this.flush();
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        finish();
+                    }
+                };
+            }
+            return outputStream;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                if (outputStream != null) {
+                    throw new IllegalStateException("getOutputStream() has already been called");
+                }
+                String characterEncoding = getCharacterEncoding();
+                ServletOutputStream stream = getOutputStream();
+                writer = new PrintWriter(new OutputStreamWriter(stream, characterEncoding == null ? "ISO-8859-1" : characterEncoding));
+                outputStream = stream;
+            }
+            return writer;
+        }
+
+        //the length is known only once the body is complete
+        @Override
+        public void setContentLength(int len) {
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            if (!CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                super.setHeader(name, value);
+            }
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            if (!CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                super.addHeader(name, value);
+            }
+        }
+
+        @Override
+        public void setIntHeader(String name, int value) {
+            if (!CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                super.setIntHeader(name, value);
+            }
+        }
+
+        @Override
+        public void addIntHeader(String name, int value) {
+            if (!CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                super.addIntHeader(name, value);
+            }
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            } else {
+                flush();
+            }
+        }
+
+        @Override
+        public void resetBuffer() {
+            super.resetBuffer();
+            if (buffer != null) {
+                buffer.reset();
+            }
+        }
+
+        @Override
+        public void reset() {
+            super.reset();
+            if (buffer != null) {
+                buffer.reset();
+            }
+        }
+
+        @Override
+        public void sendError(int sc, String msg) throws IOException {
+            finished = true;
+            super.sendError(sc, msg);
+        }
+
+        @Override
+        public void sendError(int sc) throws IOException {
+            finished = true;
+            super.sendError(sc);
+        }
+
+        @Override
+        public void sendRedirect(String location) throws IOException {
+            finished = true;
+            super.sendRedirect(location);
+        }
+
+        private void write(byte[] b, int off, int len) throws IOException {
+            if (finished) {
+                throw new IOException("The response has already been completed");
+            }
+            if (out == null) {
+                buffer.write(b, off, len);
+                if (buffer.size() > threshold) {
+                    startCompression();
+                }
+            } else {
+                out.write(b, off, len);
+            }
+        }
+
+        private void startCompression() throws IOException {
+            if (getResponse().isCommitted() || getHeader(CONTENT_ENCODING) != null) {
+                //too late to add a header, or the body is already encoded
+                out = getResponse().getOutputStream();
+            } else {
+                super.setHeader(CONTENT_ENCODING, coding);
+                OutputStream target = getResponse().getOutputStream();
+                out = GZIP.equals(coding) ? new GZIPOutputStream(target) : new DeflaterOutputStream(target);
+            }
+            buffer.writeTo(out);
+            buffer = null;
+        }
+
+        /**
+         * A flush before the threshold is reached means the body is streamed, so it is sent as is
+         */
+        private void flush() throws IOException {
+            if (finishing || finished) {
+                return;
+            }
+            if (out == null) {
+                out = getResponse().getOutputStream();
+                buffer.writeTo(out);
+                buffer = null;
+            }
+            out.flush();
+        }
+
+        private void finish() throws IOException {
+            if (finished) {
+                return;
+            }
+            if (writer != null) {
+                //the pending characters are written, without the flush being taken as a streamed body
+                finishing = true;
+                writer.flush();
+            }
+            finished = true;
+            if (out == null) {
+                if (buffer.size() > 0) {
+                    getResponse().setContentLength(buffer.size());
+                    buffer.writeTo(getResponse().getOutputStream());
+                }
+                buffer = null;
+                return;
+            }
+            if (out instanceof DeflaterOutputStream) {
+                ((DeflaterOutputStream) out).finish();
+            }
+            out.flush();
+        }
+    }
+}
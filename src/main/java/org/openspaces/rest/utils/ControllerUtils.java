@@ -15,26 +15,49 @@
  */
 package org.openspaces.rest.utils;
 
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.Version;
+import com.fasterxml.jackson.databind.JsonSerializer;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.gigaspaces.client.ChangeSet;
 import com.gigaspaces.document.SpaceDocument;
 import com.gigaspaces.metadata.SpacePropertyDescriptor;
 import com.gigaspaces.metadata.SpaceTypeDescriptor;
 import com.j_spaces.core.UnknownTypeException;
+import com.j_spaces.core.client.SQLQuery;
 import org.openspaces.core.GigaSpace;
 import org.openspaces.core.GigaSpaceConfigurer;
+import org.openspaces.core.space.CannotFindSpaceException;
 import org.openspaces.core.space.UrlSpaceConfigurer;
+import org.openspaces.core.space.cache.LocalCacheSpaceConfigurer;
+import org.openspaces.core.space.cache.LocalViewSpaceConfigurer;
 import org.openspaces.rest.exceptions.RestException;
+import org.openspaces.rest.exceptions.SpaceNotFoundException;
 import org.openspaces.rest.exceptions.TypeNotFoundException;
 import org.openspaces.rest.exceptions.UnsupportedTypeException;
 import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
 
 import java.io.BufferedReader;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.io.Serializable;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -46,8 +69,21 @@ import java.util.logging.Logger;
  */
 public class ControllerUtils {
 	private static final Logger logger = Logger.getLogger(ControllerUtils.class.getName());
-	private static final TypeReference<HashMap<String, Object>[]> typeRef = new TypeReference<HashMap<String, Object>[]>() {};
 	public static final XapConnectionCache xapCache=new XapConnectionCache();
+	public static final CursorRegistry cursors=new CursorRegistry();
+	public static final TypeDescriptorCache typeCache=new TypeDescriptorCache();
+	public static final ChunkedWriter chunkedWriter=new ChunkedWriter();
+	public static final WriteStats writeStats=new WriteStats();
+	public static final IngestionBuffer ingestionBuffer=new IngestionBuffer();
+	public static final PartitionCounter partitionCounter=new PartitionCounter();
+	public static final ResponseCache responseCache=new ResponseCache();
+	public static final RequestMetrics metrics=new RequestMetrics();
+	public static final SlowOperationLog slowOperations=new SlowOperationLog();
+	/** runs the space calls of the requests on a single entry or a given set of ids */
+	public static final AsyncPool pointPool=new AsyncPool("point", 32, 1000);
+	/** runs the space calls of the requests on queries, counts, aggregations and posted bodies */
+	public static final AsyncPool bulkPool=new AsyncPool("async", 64, 1000);
+	public static volatile long asyncTimeout=300*1000;
 	public static String spaceName;
 
 	public static String lookupLocators;
@@ -57,10 +93,12 @@ public class ControllerUtils {
 	public static ArrayList<String> allowedFields;
 
 
-	public static String date_format;
-	public static SimpleDateFormat simpleDateFormat;
+	public static DateCodec dateCodec;
 	public static ObjectMapper mapper;
 
+	private static final byte[] SMILE_HEADER = {':', ')', '\n'};
+	private static final SmileFactory smileFactory = new SmileFactory();
+
 	static {
 		//Java objects
 		javaPrimitives.put("int32", Integer.class);
@@ -77,32 +115,151 @@ public class ControllerUtils {
 		javaPrimitives.put("object", SpaceDocument.class);
 
 		allowedFields = new ArrayList<String>(Arrays.asList("idProperty", "routingProperty", "fixedProperties", "compoundIndex", "fifoSupport", "blobStoreEnabled", "storageType", "supportsOptimisticLocking", "supportsDynamicProperties"));
+	}
 
+	/**
+	 * Sets the datetime format used to convert date properties and creates the mapper which writes dates in it
+	 */
+	public static void configureDateFormat(String datetimeFormat) {
+		dateCodec = new DateCodec(datetimeFormat);
+		mapper = createObjectMapper(new JsonFactory());
 	}
 
-	public static SpaceDocument[] createSpaceDocuments(String type, String body, GigaSpace gigaSpace)
+	/**
+	 * Creates a mapper of the given format which writes dates with the configured date codec
+	 */
+	public static ObjectMapper createObjectMapper(JsonFactory factory) {
+		SimpleModule module = new SimpleModule("DateCodec", Version.unknownVersion());
+		module.addSerializer(Date.class, new JsonSerializer<Date>() {
+			@Override
+			public void serialize(Date value, JsonGenerator generator, SerializerProvider provider) throws IOException {
+				generator.writeString(dateCodec.format(value));
+			}
+		});
+		ObjectMapper objectMapper = new ObjectMapper(factory);
+		objectMapper.registerModule(module);
+		objectMapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
+		return objectMapper;
+	}
+
+	/**
+	 * Opens a reader of the space documents in the request body, which is either json or smile.
+	 * The type is looked up before anything is read, so an unregistered type fails the request before any
+	 * document is written.
+	 */
+	public static SpaceDocumentReader createSpaceDocumentReader(String type, InputStream body, GigaSpace gigaSpace)
 			throws TypeNotFoundException {
-		HashMap<String, Object>[] propertyMapArr;
-		try{
-			//if single json object convert it to array
-			String data = body;
-			if (!body.startsWith("[")){
-				StringBuilder sb = new StringBuilder(body);
-				sb.insert(0, "[");
-				sb.append("]");
-				data = sb.toString();
+		TypeDescriptorCache.CachedType cachedType = typeCache.getRequired(gigaSpace, type);
+		try {
+			//smile content starts with its header, json never starts with ':'
+			PushbackInputStream in = new PushbackInputStream(body, SMILE_HEADER.length);
+			byte[] header = new byte[SMILE_HEADER.length];
+			int length = 0;
+			int read;
+			while (length < header.length && (read = in.read(header, length, header.length - length)) != -1) {
+				length += read;
+			}
+			in.unread(header, 0, length);
+			boolean smile = length == SMILE_HEADER.length && Arrays.equals(header, SMILE_HEADER);
+			JsonFactory factory = smile ? smileFactory : mapper.getFactory();
+			return new SpaceDocumentReader(type, cachedType, factory.createParser(in));
+		} catch (IOException e) {
+			throw new HttpMessageNotReadableException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * @param fields comma separated list of property names, as received in the fields request parameter
+	 * @return the property names to use as query projections, or null if all the properties should be returned
+	 */
+	public static String[] parseFields(String fields) {
+		if (fields == null) {
+			return null;
+		}
+		List<String> projections = new ArrayList<String>();
+		for (String field : fields.split(",")) {
+			String trimmed = field.trim();
+			if (trimmed.length() > 0) {
+				projections.add(trimmed);
+			}
+		}
+		return projections.isEmpty() ? null : projections.toArray(new String[projections.size()]);
+	}
+
+	/**
+	 * Translates the json body of a PATCH request to a change set:
+	 * { "set" : { "path" : value }, "unset" : ["path"], "increment" : { "path" : delta },
+	 *   "addToCollection" : { "path" : value }, "removeFromCollection" : { "path" : value } }
+	 * Values of fixed properties are converted to the property type, paths of nested properties are used as is.
+	 */
+	@SuppressWarnings("unchecked")
+	public static ChangeSet createChangeSet(Map<String, Object> operations, TypeDescriptorCache.CachedType cachedType) {
+		ChangeSet changeSet = new ChangeSet();
+		int changes = 0;
+		for (Entry<String, Object> operation : operations.entrySet()) {
+			String name = operation.getKey();
+			if ("unset".equals(name)) {
+				if (!(operation.getValue() instanceof List)) {
+					throw new RestException("Change operation [unset] must be a json array of paths");
+				}
+				for (Object path : (List<Object>) operation.getValue()) {
+					changeSet.unset(String.valueOf(path));
+					changes++;
+				}
+				continue;
+			}
+			if (!(operation.getValue() instanceof Map)) {
+				throw new RestException("Change operation [" + name + "] must be a json object of paths and values");
+			}
+			for (Entry<String, Object> change : ((Map<String, Object>) operation.getValue()).entrySet()) {
+				String path = change.getKey();
+				Object value = change.getValue();
+				if ("set".equals(name)) {
+					changeSet.set(path, (Serializable) toChangeValue(path, value, cachedType));
+				} else if ("increment".equals(name)) {
+					//properties declared as Object are not converted to a number, the json number is used as is
+					Object delta = toChangeValue(path, value, cachedType);
+					increment(changeSet, path, delta instanceof Number ? delta : value);
+				} else if ("addToCollection".equals(name)) {
+					changeSet.addToCollection(path, (Serializable) value);
+				} else if ("removeFromCollection".equals(name)) {
+					changeSet.removeFromCollection(path, (Serializable) value);
+				} else {
+					throw new RestException("Unsupported change operation [" + name
+							+ "]. Supported operations are set, unset, increment, addToCollection and removeFromCollection");
+				}
+				changes++;
 			}
-			//convert to json
-			propertyMapArr = mapper.readValue(data, typeRef);
-		} catch(Exception e){
-			throw new HttpMessageNotReadableException(e.getMessage(), e.getCause());
 		}
-		SpaceDocument[] documents = new SpaceDocument[propertyMapArr.length];
-		for (int i = 0; i < propertyMapArr.length; i++) {
-				Map<String, Object> typeBasedProperties = getTypeBasedProperties(type, propertyMapArr[i], gigaSpace);
-				documents[i] = new SpaceDocument(type, typeBasedProperties);
+		if (changes == 0) {
+			throw new RestException("Request body must contain at least one change operation");
+		}
+		return changeSet;
+	}
+
+	private static Object toChangeValue(String path, Object value, TypeDescriptorCache.CachedType cachedType) {
+		if (value == null || cachedType.getConverter(path) == null) {
+			return value;
+		}
+		return convertProperty(path, value, cachedType);
+	}
+
+	private static void increment(ChangeSet changeSet, String path, Object delta) {
+		if (delta instanceof Integer) {
+			changeSet.increment(path, ((Integer) delta).intValue());
+		} else if (delta instanceof Long) {
+			changeSet.increment(path, ((Long) delta).longValue());
+		} else if (delta instanceof Short) {
+			changeSet.increment(path, ((Short) delta).shortValue());
+		} else if (delta instanceof Byte) {
+			changeSet.increment(path, ((Byte) delta).byteValue());
+		} else if (delta instanceof Float) {
+			changeSet.increment(path, ((Float) delta).floatValue());
+		} else if (delta instanceof Number) {
+			changeSet.increment(path, ((Number) delta).doubleValue());
+		} else {
+			throw new RestException("Increment of [" + path + "] must be a number");
 		}
-		return documents;
 	}
 
 	public static Map<String, Object>[] createPropertiesResult(SpaceDocument[] docs) {
@@ -115,150 +272,473 @@ public class ControllerUtils {
 
 
 	/**
-	 * @param documentType
-	 * @param propertyMap
-	 * @param gigaSpace
-	 * @return
-	 * @throws UnknownTypeException
-	 * @throws TypeNotFoundException
+	 * Converts a property value read from the request to the type of the property in space
 	 */
-	private static Map<String, Object> getTypeBasedProperties(String documentType, Map<String, Object> propertyMap, GigaSpace gigaSpace) throws TypeNotFoundException {
-		SpaceTypeDescriptor spaceTypeDescriptor = gigaSpace.getTypeManager().getTypeDescriptor(documentType);
-		if (spaceTypeDescriptor == null){
-			throw new TypeNotFoundException(documentType);
-		}else{
-			Map<String, Object> buildTypeBasedProperties = buildTypeBasedProperties(propertyMap, spaceTypeDescriptor, gigaSpace);
-			return buildTypeBasedProperties;
-		}
-
-	}
-
 	@SuppressWarnings("unchecked")
-	private static Map<String, Object> buildTypeBasedProperties(
-			Map<String, Object> propertyMap,
-			SpaceTypeDescriptor spaceTypeDescriptor, GigaSpace gigaSpace) throws TypeNotFoundException {
-		HashMap<String, Object> newPropertyMap = new HashMap<String, Object>();
-		for(Entry<String, Object> entry : propertyMap.entrySet()){
-			String propKey = entry.getKey();
-			Object oldPropValue = entry.getValue();
-			SpacePropertyDescriptor propDesc = spaceTypeDescriptor.getFixedProperty(propKey);
-			if (propDesc == null){
-				if(logger.isLoggable(Level.WARNING))
-					logger.warning("could not find SpacePropertyDescriptor for " + propKey + ", using String as property type");
-				newPropertyMap.put(propKey, oldPropValue);
-			}/*else if(propDesc.getType().equals(Object.class)){
-                logger.warning("Existing Type of " + propKey + " is Object, using String as property type");
-                newPropertyMap.put(propKey, oldPropValue);
-            }*/
-			else{
-				Object convertedObj;
-				if (oldPropValue instanceof Map){ //SpaceDocument
-					Map obj = (Map) oldPropValue;
-					SpaceDocument sp = new SpaceDocument();
-					sp.setTypeName((String) obj.get("typeName"));
-					if (obj.get("version") != null)
-						sp.setVersion((Integer) obj.get("version"));
-					if (obj.get("transient") != null)
-						sp.setTransient((Boolean) obj.get("transient"));
-					sp.addProperties((Map<String, Object>) obj.get("properties"));
-					convertedObj = sp;
-
-				}else if(oldPropValue instanceof List) {
-					List<Map<String, Object>> oldPropValueList = (List<Map<String, Object>>) oldPropValue;
-
-					int counter = 0;
-					SpaceDocument[] spaceDocuments = new SpaceDocument[oldPropValueList.size()];
-					for(Map<String, Object> map : oldPropValueList) {
-
-						SpaceDocument document = new SpaceDocument();
-						document.setTypeName((String) map.get("typeName"));
-						if (map.get("version") != null)
-							document.setVersion((Integer) map.get("version"));
-						if (map.get("transient") != null)
-							document.setTransient((Boolean) map.get("transient"));
-						document.addProperties((Map<String, Object>) map.get("properties"));
-
-						spaceDocuments[counter++] = document;
-					}
-					convertedObj = spaceDocuments;
-				}else{
-					//try {
-						convertedObj = convertPropertyToPrimitiveType(String.valueOf(oldPropValue), propDesc.getType(), propKey);
-					/*} catch (UnsupportedTypeException e) {
-						convertedObj = oldPropValue;
-					}*/
+	static Object convertProperty(String propKey, Object oldPropValue, TypeDescriptorCache.CachedType cachedType) {
+		PropertyConverter converter = cachedType.getConverter(propKey);
+		if (converter == null){
+			if(logger.isLoggable(Level.WARNING))
+				logger.warning("could not find SpacePropertyDescriptor for " + propKey + ", using String as property type");
+			return oldPropValue;
+		}/*else if(propDesc.getType().equals(Object.class)){
+            logger.warning("Existing Type of " + propKey + " is Object, using String as property type");
+            newPropertyMap.put(propKey, oldPropValue);
+        }*/
+		else{
+			Object convertedObj;
+			if (oldPropValue instanceof Map){ //SpaceDocument
+				Map obj = (Map) oldPropValue;
+				SpaceDocument sp = new SpaceDocument();
+				sp.setTypeName((String) obj.get("typeName"));
+				if (obj.get("version") != null)
+					sp.setVersion((Integer) obj.get("version"));
+				if (obj.get("transient") != null)
+					sp.setTransient((Boolean) obj.get("transient"));
+				sp.addProperties((Map<String, Object>) obj.get("properties"));
+				convertedObj = sp;
+
+			}else if(oldPropValue instanceof List) {
+				List<Map<String, Object>> oldPropValueList = (List<Map<String, Object>>) oldPropValue;
+
+				int counter = 0;
+				SpaceDocument[] spaceDocuments = new SpaceDocument[oldPropValueList.size()];
+				for(Map<String, Object> map : oldPropValueList) {
+
+					SpaceDocument document = new SpaceDocument();
+					document.setTypeName((String) map.get("typeName"));
+					if (map.get("version") != null)
+						document.setVersion((Integer) map.get("version"));
+					if (map.get("transient") != null)
+						document.setTransient((Boolean) map.get("transient"));
+					document.addProperties((Map<String, Object>) map.get("properties"));
+
+					spaceDocuments[counter++] = document;
 				}
-				newPropertyMap.put(propKey, convertedObj);
+				convertedObj = spaceDocuments;
+			}else{
+				//try {
+					convertedObj = converter.convert(String.valueOf(oldPropValue));
+				/*} catch (UnsupportedTypeException e) {
+					convertedObj = oldPropValue;
+				}*/
 			}
+			return convertedObj;
 		}
-		return newPropertyMap;
 	}
 
 	public static Object convertPropertyToPrimitiveType(String object, Class type, String propKey) {
+		return getPropertyConverter(type, propKey).convert(object);
+	}
+
+	/**
+	 * Converts the string value of a property to the property type
+	 */
+	public interface PropertyConverter {
+		Object convert(String value);
+	}
+
+	private static final PropertyConverter LONG_CONVERTER = new PropertyConverter() {
+		public Object convert(String value) {
+			return Long.valueOf(value);
+		}
+	};
+
+	private static final PropertyConverter BOOLEAN_CONVERTER = new PropertyConverter() {
+		public Object convert(String value) {
+			return Boolean.valueOf(value);
+		}
+	};
+
+	private static final PropertyConverter INTEGER_CONVERTER = new PropertyConverter() {
+		public Object convert(String value) {
+			return Integer.valueOf(value);
+		}
+	};
+
+	private static final PropertyConverter BYTE_CONVERTER = new PropertyConverter() {
+		public Object convert(String value) {
+			return Byte.valueOf(value);
+		}
+	};
+
+	private static final PropertyConverter SHORT_CONVERTER = new PropertyConverter() {
+		public Object convert(String value) {
+			return Short.valueOf(value);
+		}
+	};
+
+	private static final PropertyConverter FLOAT_CONVERTER = new PropertyConverter() {
+		public Object convert(String value) {
+			return Float.valueOf(value);
+		}
+	};
+
+	private static final PropertyConverter DOUBLE_CONVERTER = new PropertyConverter() {
+		public Object convert(String value) {
+			return Double.valueOf(value);
+		}
+	};
+
+	private static final PropertyConverter STRING_CONVERTER = new PropertyConverter() {
+		public Object convert(String value) {
+			return String.valueOf(value);
+		}
+	};
+
+	private static final PropertyConverter DATE_CONVERTER = new PropertyConverter() {
+		public Object convert(String value) {
+			return dateCodec.parse(value);
+		}
+	};
+
+	/**
+	 * Resolves the converter of a property type once, so it can be reused for every value of the property.
+	 * Converting a value of a non primitive type throws {@link UnsupportedTypeException}.
+	 */
+	public static PropertyConverter getPropertyConverter(final Class type, final String propKey) {
 		if (type.equals(Long.class) || type.equals(Long.TYPE))
-			return Long.valueOf(object);
+			return LONG_CONVERTER;
 
 		if (type.equals(Boolean.class) || type.equals(Boolean.TYPE))
-			return Boolean.valueOf(object);
+			return BOOLEAN_CONVERTER;
 
 		if (type.equals(Integer.class) || type.equals(Integer.TYPE))
-			return Integer.valueOf(object);
+			return INTEGER_CONVERTER;
 
 		if (type.equals(Byte.class) || type.equals(Byte.TYPE))
-			return Byte.valueOf(object);
+			return BYTE_CONVERTER;
 
 		if (type.equals(Short.class) || type.equals(Short.TYPE))
-			return Short.valueOf(object);
+			return SHORT_CONVERTER;
 
 		if (type.equals(Float.class) || type.equals(Float.TYPE))
-			return Float.valueOf(object);
+			return FLOAT_CONVERTER;
 
 		if (type.equals(Double.class) || type.equals(Double.TYPE))
-			return Double.valueOf(object);
+			return DOUBLE_CONVERTER;
 
 		if (type.isEnum())
-			return Enum.valueOf(type, object);
+			return new PropertyConverter() {
+				public Object convert(String value) {
+					return Enum.valueOf(type, value);
+				}
+			};
 
 		if (type.equals(String.class) || type.equals(Object.class))
-			return String.valueOf(object);
+			return STRING_CONVERTER;
 
-		if (type.equals(java.util.Date.class)) {
-			try {
-				return simpleDateFormat.parse(object);
-			} catch (ParseException e) {
-				throw new RestException("Unable to parse date ["+object+"]. Make sure it matches the format: "+date_format);
-			}
-		}
+		if (type.equals(java.util.Date.class))
+			return DATE_CONVERTER;
 
 		//unknown type
-		throw new UnsupportedTypeException("Non primitive type when converting property ["+propKey+"]:" +type);
+		return new PropertyConverter() {
+			public Object convert(String value) {
+				throw new UnsupportedTypeException("Non primitive type when converting property ["+propKey+"]:" +type);
+			}
+		};
 	}
 
 	/**
 	 * Open ended thread safe cache for XAP connections
+	 * <p/>
+	 * Holds a connection per space name. The configured spaceName is the default space, and the names listed
+	 * in the spaces property can be selected per request, see {@link SpaceSelectionFilter}. Connections are
+	 * opened lazily, on the first request to the space.
+	 * <p/>
+	 * Reads of the types listed in local_cache_types are served by a local cache of the space, and reads of the
+	 * types listed in local_views by a local view holding the entries which match the query of the type. Both are
+	 * created on the first read of such a type. Writes and the reads of all the other types use the remote proxy.
+	 * <p/>
+	 * The connected spaces are pinged by a background thread every health check interval, and on demand when a
+	 * request fails with a remote error. Only a proxy whose ping fails is replaced, so the local caches and local
+	 * views of a space which is still reachable are kept.
 	 *
 	 * @author DeWayne
 	 *
 	 */
 	public static class XapConnectionCache{
-		private final Logger log=Logger.getLogger("XapConnectionCache");
-		private static AtomicReference<XapEndpoint> cache= new AtomicReference<XapEndpoint>();
+		private final ConcurrentHashMap<String, XapConnection> connections=new ConcurrentHashMap<String, XapConnection>();
+		private volatile Set<String> spaceNames=Collections.emptySet();
+		private volatile long healthCheckInterval=30*1000;
+		private volatile Set<String> localCacheTypes=Collections.emptySet();
+		private volatile Map<String, String> localViews=Collections.emptyMap();
+		//created with the first connection, guarded by this
+		private ScheduledExecutorService healthChecker;
 
 		public XapConnectionCache(){
 		}
 
+		/**
+		 * @param names comma separated names of the spaces which can be selected in addition to spaceName
+		 */
+		public void setSpaceNames(String names){
+			Set<String> result=new HashSet<String>();
+			if(names!=null){
+				for(String name : names.split(",")){
+					if(name.trim().length()>0)result.add(name.trim());
+				}
+			}
+			spaceNames=result;
+		}
+
+		public void setHealthCheckInterval(long healthCheckInterval){
+			this.healthCheckInterval=healthCheckInterval;
+		}
+
+		/**
+		 * @param types comma separated names of the types which are read through a local cache
+		 */
+		public void setLocalCacheTypes(String types){
+			Set<String> result=new HashSet<String>();
+			if(types!=null){
+				for(String type : types.split(",")){
+					if(type.trim().length()>0)result.add(type.trim());
+				}
+			}
+			localCacheTypes=result;
+		}
+
+		/**
+		 * @param views semicolon separated views, each a type name optionally followed by a colon and the query of
+		 * the entries to hold, such as Country;Product:Category = 'Reference'. A type without a query is held whole.
+		 * A type which is listed both here and in the local cache types is read through its view.
+		 */
+		public void setLocalViews(String views){
+			Map<String, String> result=new LinkedHashMap<String, String>();
+			if(views!=null){
+				for(String view : views.split(";")){
+					int colon=view.indexOf(':');
+					String type=(colon==-1 ? view : view.substring(0, colon)).trim();
+					if(type.length()==0)continue;
+					result.put(type, colon==-1 ? "" : view.substring(colon+1).trim());
+				}
+			}
+			localViews=result;
+		}
+
+		/**
+		 * @return the space selected by the current request, or the default space
+		 */
 		public GigaSpace get(){
+			return get(currentSpaceName());
+		}
+
+		public GigaSpace get(String name){
+			return connection(name).get();
+		}
+
+		/**
+		 * @return the proxy which serves the reads of the type in the space selected by the current request: its
+		 * local view, its local cache or the remote proxy
+		 */
+		public GigaSpace getForReading(String type){
+			return connection(currentSpaceName()).getForReading(type);
+		}
+
+		private XapConnection connection(String name){
+			XapConnection connection=connections.get(name);
+			if(connection==null){
+				if(!name.equals(spaceName) && !spaceNames.contains(name)){
+					throw new SpaceNotFoundException(name);
+				}
+				XapConnection newConnection=new XapConnection(name);
+				connection=connections.putIfAbsent(name, newConnection);
+				if(connection==null)connection=newConnection;
+			}
+			return connection;
+		}
 
-			synchronized(cache){
-				log.finest("getting space");
+		/**
+		 * Pings the space selected by the current request in the background, and drops its connection if it is
+		 * unreachable, so the next call to {@link #get()} connects again. Should be called when a call through the
+		 * space proxy fails with a remote error.
+		 */
+		public void checkHealth(){
+			XapConnection connection=connections.get(currentSpaceName());
+			if(connection!=null)connection.checkHealthLater();
+		}
 
-				GigaSpace gs=getSpace();
-				if(gs!=null)return gs;
+		/**
+		 * Drops the connection to the space selected by the current request, so the next call to
+		 * {@link #get()} connects again
+		 */
+		public void invalidate(){
+			XapConnection connection=connections.get(currentSpaceName());
+			if(connection!=null)connection.invalidate();
+		}
 
+		public synchronized void shutdown(){
+			if(healthChecker!=null)healthChecker.shutdownNow();
+		}
+
+		/**
+		 * Starts pinging the connected spaces every health check interval, unless it is 0
+		 */
+		private synchronized ScheduledExecutorService startHealthChecks(){
+			if(healthChecker==null){
+				healthChecker=Executors.newSingleThreadScheduledExecutor(new ThreadFactory(){
+					@Override
+					public Thread newThread(Runnable runnable){
+						Thread thread=new Thread(runnable, "rest-space-health-check");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+				long interval=healthCheckInterval;
+				if(interval>0){
+					healthChecker.scheduleWithFixedDelay(new Runnable(){
+						@Override
+						public void run(){
+							for(XapConnection connection : connections.values()){
+								connection.checkHealth();
+							}
+						}
+					}, interval, interval, TimeUnit.MILLISECONDS);
+				}
+			}
+			return healthChecker;
+		}
+
+		private static String currentSpaceName(){
+			RequestAttributes attributes=RequestContextHolder.getRequestAttributes();
+			if(attributes!=null){
+				Object name=attributes.getAttribute(SpaceSelectionFilter.SPACE_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+				if(name!=null)return (String) name;
+			}
+			return spaceName;
+		}
+
+		/**
+		 * Connection to a single space.
+		 * <p/>
+		 * Once connected, getting the space is a plain read of the cached endpoint. The lock is only taken to
+		 * connect, either the first time or after the connection was invalidated. Failed connection attempts are
+		 * retried with an exponential backoff, and requests made before the next attempt is due fail fast
+		 * instead of waiting on the lookup. The health checks run on the background thread of the cache, an
+		 * unreachable proxy is replaced.
+		 */
+		private class XapConnection{
+			private static final long INITIAL_BACKOFF=500;
+			private static final long MAX_BACKOFF=30*1000;
+
+			private final Logger log=Logger.getLogger("XapConnectionCache");
+			private final String name;
+			private final AtomicReference<XapEndpoint> cache= new AtomicReference<XapEndpoint>();
+			private final AtomicBoolean healthCheckPending=new AtomicBoolean();
+			private final Object connectLock=new Object();
+			//guarded by connectLock
+			private long backoff=0;
+			private long nextConnectAttempt=0;
+			private RuntimeException lastConnectFailure;
+
+			private XapConnection(String name){
+				this.name=name;
+			}
+
+			private GigaSpace get(){
+				XapEndpoint ep=cache.get();
+				if(ep==null)return connect();
+				return ep.space;
+			}
+
+			private GigaSpace getForReading(String type){
+				Map<String, String> views=localViews;
+				boolean view=views.containsKey(type);
+				if(!view && !localCacheTypes.contains(type))return get();
+				get();
+				XapEndpoint ep=cache.get();
+				//invalidated by a concurrent health check, read remotely until the next connection
+				if(ep==null)return get();
+				return view ? ep.localView(views) : ep.localCache();
+			}
+
+			/**
+			 * Runs a health check on the background thread, unless one is already pending
+			 */
+			private void checkHealthLater(){
+				if(!healthCheckPending.compareAndSet(false, true))return;
+				try{
+					startHealthChecks().execute(new Runnable(){
+						@Override
+						public void run(){
+							healthCheckPending.set(false);
+							checkHealth();
+						}
+					});
+				}catch(RejectedExecutionException e){
+					//shutting down
+					healthCheckPending.set(false);
+				}
+			}
+
+			private void checkHealth(){
+				XapEndpoint ep=cache.get();
+				if(ep==null)return;
+				try{
+					ep.space.getSpace().ping();
+				}catch(Exception e){
+					log.log(Level.WARNING, "health check of space " + name + " failed", e);
+					invalidate(ep);
+				}
+			}
+
+			private void invalidate(){
+				XapEndpoint ep=cache.get();
+				if(ep!=null)invalidate(ep);
+			}
+
+			private void invalidate(XapEndpoint ep){
+				if(!cache.compareAndSet(ep, null))return;
+				log.warning("invalidating connection to space " + name);
+				ep.destroyLocalProxies();
+				try{
+					ep.usc.destroy();
+				}catch(Exception e){
+					log.log(Level.FINE, "failed to close space proxy", e);
+				}
+			}
+
+			private GigaSpace connect(){
+				synchronized(connectLock){
+					//another thread may have connected while this one was waiting
+					XapEndpoint ep=cache.get();
+					if(ep!=null)return ep.space;
+
+					long now=System.currentTimeMillis();
+					if(now<nextConnectAttempt){
+						throw new CannotFindSpaceException("Space " + name + " is unavailable, next connection attempt in "
+								+ (nextConnectAttempt-now) + "ms", lastConnectFailure);
+					}
+
+					String url=createUrl(name);
+					log.info("  connecting to " + url);
+					UrlSpaceConfigurer usc=new UrlSpaceConfigurer(url);
+					GigaSpace gs;
+					try{
+						gs=new GigaSpaceConfigurer(usc.space()).gigaSpace();
+					}catch(RuntimeException e){
+						backoff=(backoff==0 ? INITIAL_BACKOFF : Math.min(backoff*2, MAX_BACKOFF));
+						nextConnectAttempt=System.currentTimeMillis()+backoff;
+						lastConnectFailure=e;
+						log.log(Level.WARNING, "failed to connect to " + url + ", retrying in " + backoff + "ms", e);
+						throw e;
+					}
+					backoff=0;
+					nextConnectAttempt=0;
+					lastConnectFailure=null;
+					cache.set(new XapEndpoint(gs,usc));
+					startHealthChecks();
+					log.finest("  returning space");
+					return gs;
+				}
+			}
+
+			private String createUrl(String name){
 				log.finest("lookupgroups: " + lookupGroups);
 				log.finest("lookupLocators: " + lookupLocators);
-				log.finest("spaceName: "+spaceName);
-				String url="jini://*/*/"+spaceName;
+				log.finest("spaceName: "+name);
+				String url="jini://*/*/"+name;
 
 
 				if ((lookupGroups!= null && lookupGroups.length() > 0) || (lookupLocators != null && lookupLocators.length() > 0)) {
@@ -280,36 +760,62 @@ public class ControllerUtils {
 						url += "locators="+lookupLocators;
 					}
 				}
-
-				log.info("  connecting to " + url);
-				UrlSpaceConfigurer usc=new UrlSpaceConfigurer(url);
-				gs=new GigaSpaceConfigurer(usc.space()).gigaSpace();
-				cache.set(new XapEndpoint(gs,usc));
-				log.finest("  returning space");
-				return gs;
+				return url;
 			}
 		}
-
-		/**
-		 * Gets a space in the cache.  Doesn't open new connections.
-		 * @return GigaSpace if successful.  Null otherwise.
-		 */
-		private GigaSpace getSpace(){
-			XapEndpoint ep=cache.get();
-			if(ep==null)return null;
-			return ep.space;
-		}
 	}
 
 	private static class XapEndpoint{
 		public GigaSpace space=null;
 		public UrlSpaceConfigurer usc=null;
+		//created on first use, guarded by this
+		private LocalCacheSpaceConfigurer localCacheConfigurer;
+		private GigaSpace localCache;
+		private LocalViewSpaceConfigurer localViewConfigurer;
+		private GigaSpace localView;
 
 		public XapEndpoint(GigaSpace space,UrlSpaceConfigurer usc){
 			this.space=space;
 			this.usc=usc;
 		}
 
+		public synchronized GigaSpace localCache(){
+			if(localCache==null){
+				logger.info("creating local cache of space " + usc.space().getName());
+				localCacheConfigurer=new LocalCacheSpaceConfigurer(usc.space());
+				localCache=new GigaSpaceConfigurer(localCacheConfigurer.space()).gigaSpace();
+			}
+			return localCache;
+		}
+
+		/**
+		 * The view holds the entries of all the configured views, it is created with the views configured
+		 * at the time of the first read through it
+		 */
+		public synchronized GigaSpace localView(Map<String, String> views){
+			if(localView==null){
+				logger.info("creating local view of space " + usc.space().getName() + " holding " + views);
+				localViewConfigurer=new LocalViewSpaceConfigurer(usc.space());
+				for(Entry<String, String> view : views.entrySet()){
+					localViewConfigurer.addViewQuery(new SQLQuery<SpaceDocument>(view.getKey(), view.getValue()));
+				}
+				localView=new GigaSpaceConfigurer(localViewConfigurer.space()).gigaSpace();
+			}
+			return localView;
+		}
+
+		public synchronized void destroyLocalProxies(){
+			try{
+				if(localCacheConfigurer!=null)localCacheConfigurer.destroy();
+				if(localViewConfigurer!=null)localViewConfigurer.destroy();
+			}catch(Exception e){
+				logger.log(Level.FINE, "failed to close local space proxy", e);
+			}
+			localCacheConfigurer=null;
+			localCache=null;
+			localViewConfigurer=null;
+			localView=null;
+		}
 	}
 
 }
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2015 GigaSpaces Technologies Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at *
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License."
+ */
+package org.openspaces.rest.utils;
+
+import com.gigaspaces.client.iterator.IteratorScope;
+import com.j_spaces.core.client.GSIterator;
+import com.j_spaces.core.client.SQLQuery;
+import net.jini.core.lease.UnknownLeaseException;
+import org.openspaces.core.GigaSpace;
+import org.openspaces.rest.exceptions.CursorMismatchException;
+import org.openspaces.rest.exceptions.ObjectNotFoundException;
+import org.openspaces.rest.exceptions.RestException;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the space iterators behind paged reads, keyed by an opaque token handed to the client.
+ * <p/>
+ * Each cursor holds a {@link GSIterator} leased for the cursor timeout, so only one page is kept in the
+ * gateway at a time. The lease is renewed on every page, so a cursor stays open as long as the client keeps
+ * paging. Cursors which were not used within the timeout are closed the next time the registry is accessed.
+ * At most maxOpenCursors cursors are open at a time.
+ * <p/>
+ * A cursor remembers the space it was opened in and a key of the request which opened it, its type, query,
+ * projections and routing, and can only be resumed by a request with the same space and key.
+ *
+ * @since 12.0
+ */
+public class CursorRegistry {
+    private static final Logger logger = Logger.getLogger(CursorRegistry.class.getName());
+
+    private final ConcurrentHashMap<String, Cursor> cursors = new ConcurrentHashMap<String, Cursor>();
+    //cursors which are open or being opened, a slot is reserved before the iterator is created
+    private final AtomicInteger openCursors = new AtomicInteger();
+    private volatile long timeout = 5 * 60 * 1000;
+    private volatile int maxOpenCursors = 100;
+
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
+    public void setMaxOpenCursors(int maxOpenCursors) {
+        this.maxOpenCursors = maxOpenCursors;
+    }
+
+    public int size() {
+        return cursors.size();
+    }
+
+    /**
+     * Opens a new cursor over the entries matching the query.
+     *
+     * @param key identifies the type, query, projections and routing of the request, see {@link #get}
+     */
+    public Cursor open(GigaSpace gigaSpace, SQLQuery<Object> query, String key, int bufferSize) {
+        purgeExpired();
+        reserveSlot();
+        long leaseDuration = timeout;
+        GSIterator iterator;
+        try {
+            iterator = gigaSpace.iterator()
+                    .addTemplate(query)
+                    .bufferSize(bufferSize)
+                    .iteratorScope(IteratorScope.CURRENT)
+                    .iterate(leaseDuration);
+        } catch (RuntimeException e) {
+            openCursors.decrementAndGet();
+            throw e;
+        }
+        Cursor cursor = new Cursor(UUID.randomUUID().toString(), gigaSpace.getSpace().getName(), key, iterator, leaseDuration);
+        cursors.put(cursor.token, cursor);
+        if (logger.isLoggable(Level.FINE))
+            logger.fine("opened cursor " + cursor.token + " for type: " + query.getTypeName());
+        return cursor;
+    }
+
+    /**
+     * @param key the key of the request which resumes the cursor, as passed to {@link #open}
+     * @return the open cursor with the given token
+     * @throws ObjectNotFoundException if there is no such cursor or it has expired
+     * @throws CursorMismatchException if the cursor was opened in another space or with another key
+     */
+    public Cursor get(String token, GigaSpace gigaSpace, String key) throws ObjectNotFoundException {
+        purgeExpired();
+        Cursor cursor = cursors.get(token);
+        if (cursor == null) {
+            throw new ObjectNotFoundException("Cursor " + token + " does not exist or has expired");
+        }
+        if (!cursor.spaceName.equals(gigaSpace.getSpace().getName()) || !cursor.key.equals(key)) {
+            throw new CursorMismatchException(token);
+        }
+        return cursor;
+    }
+
+    public void close(Cursor cursor) {
+        if (cursors.remove(cursor.token, cursor)) {
+            openCursors.decrementAndGet();
+            cursor.cancel();
+        }
+    }
+
+    private void reserveSlot() {
+        while (true) {
+            int open = openCursors.get();
+            if (open >= maxOpenCursors) {
+                throw new RestException("Cannot open a new cursor, the maximum of " + maxOpenCursors + " open cursors was reached");
+            }
+            if (openCursors.compareAndSet(open, open + 1)) {
+                return;
+            }
+        }
+    }
+
+    private void purgeExpired() {
+        long now = System.currentTimeMillis();
+        for (Iterator<Cursor> it = cursors.values().iterator(); it.hasNext(); ) {
+            Cursor cursor = it.next();
+            if (now - cursor.lastAccess > timeout && cursors.remove(cursor.token, cursor)) {
+                openCursors.decrementAndGet();
+                cursor.cancel();
+                if (logger.isLoggable(Level.FINE))
+                    logger.fine("cursor " + cursor.token + " expired");
+            }
+        }
+    }
+
+    public static class Cursor {
+        private final String token;
+        private final String spaceName;
+        private final String key;
+        private final GSIterator iterator;
+        private final long leaseDuration;
+        private volatile long lastAccess = System.currentTimeMillis();
+        private boolean exhausted;
+
+        private Cursor(String token, String spaceName, String key, GSIterator iterator, long leaseDuration) {
+            this.token = token;
+            this.spaceName = spaceName;
+            this.key = key;
+            this.iterator = iterator;
+            this.leaseDuration = leaseDuration;
+        }
+
+        public String getToken() {
+            return token;
+        }
+
+        /**
+         * Renews the lease of the iterator and reads the next page from it. A cursor may be resumed by concurrent
+         * requests, so pages are handed out one at a time.
+         *
+         * @throws ObjectNotFoundException if the lease of the iterator has already expired
+         */
+        public synchronized Object[] nextPage(int pageSize) throws ObjectNotFoundException {
+            lastAccess = System.currentTimeMillis();
+            renew();
+            List<Object> page = new ArrayList<Object>(Math.min(pageSize, 1024));
+            while (page.size() < pageSize && iterator.hasNext()) {
+                page.add(iterator.next());
+            }
+            exhausted = !iterator.hasNext();
+            lastAccess = System.currentTimeMillis();
+            return page.toArray();
+        }
+
+        private void renew() throws ObjectNotFoundException {
+            try {
+                iterator.renew(leaseDuration);
+            } catch (UnknownLeaseException e) {
+                throw new ObjectNotFoundException("Cursor " + token + " has expired");
+            } catch (Exception e) {
+                throw new RestException("Failed to renew cursor " + token + ": " + e.getMessage());
+            }
+        }
+
+        public synchronized boolean isExhausted() {
+            return exhausted;
+        }
+
+        private void cancel() {
+            try {
+                iterator.cancel();
+            } catch (Exception e) {
+                if (logger.isLoggable(Level.FINE))
+                    logger.log(Level.FINE, "failed to cancel iterator of cursor " + token, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2015 GigaSpaces Technologies Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at *
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License."
+ */
+package org.openspaces.rest.utils;
+
+import org.openspaces.rest.exceptions.RestException;
+
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * Thread safe conversion of dates to and from the configured datetime format.
+ * <p/>
+ * The codec itself is immutable. Each thread formats and parses with its own {@link SimpleDateFormat}, so
+ * request threads never share a format instance and never wait for each other.
+ * <p/>
+ * Besides the configured format, parsing accepts epoch milliseconds and ISO-8601 dates such as
+ * 2015-06-30, 2015-06-30T10:15:30, 2015-06-30T10:15:30.250Z or 2015-06-30T10:15:30+02:00.
+ * ISO-8601 dates without an offset are in the default time zone, like the configured format.
+ * The configured format is parsed strictly. A value made only of digits is taken as epoch milliseconds unless
+ * the configured format parses it and formats it back to the same value, so patterns such as yyyyMMddHHmmss
+ * do not swallow epoch milliseconds.
+ * Each form is recognized by scanning the value, there are no regular expressions and no parse exceptions
+ * on the way.
+ *
+ * @since 12.0
+ */
+public final class DateCodec {
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    private final String pattern;
+    private final ThreadLocal<SimpleDateFormat> formats;
+
+    public DateCodec(final String pattern) {
+        //fail fast on an illegal pattern
+        new SimpleDateFormat(pattern);
+        this.pattern = pattern;
+        this.formats = new ThreadLocal<SimpleDateFormat>() {
+            @Override
+            protected SimpleDateFormat initialValue() {
+                SimpleDateFormat format = new SimpleDateFormat(pattern);
+                format.setLenient(false);
+                return format;
+            }
+        };
+    }
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    public String format(Date date) {
+        return formats.get().format(date);
+    }
+
+    /**
+     * @throws RestException if the value is not in the configured format, epoch milliseconds or ISO-8601
+     */
+    public Date parse(String value) {
+        Date date = parseFormat(value);
+        if (isEpochMillis(value)) {
+            if (date != null && format(date).equals(value)) {
+                return date;
+            }
+            return new Date(Long.parseLong(value));
+        }
+        if (date != null) {
+            return date;
+        }
+        long iso = parseIso8601(value);
+        if (iso != Long.MIN_VALUE) {
+            return new Date(iso);
+        }
+        throw new RestException("Unable to parse date [" + value + "]. Make sure it matches the format: " + pattern
+                + ", epoch milliseconds or ISO-8601");
+    }
+
+    /**
+     * @return the value parsed with the configured format, or null if the format does not match the whole value
+     */
+    private Date parseFormat(String value) {
+        ParsePosition position = new ParsePosition(0);
+        Date date = formats.get().parse(value, position);
+        return date != null && position.getIndex() == value.length() ? date : null;
+    }
+
+    private static boolean isEpochMillis(String value) {
+        int start = value.startsWith("-") ? 1 : 0;
+        //18 digits always fit in a long
+        if (value.length() == start || value.length() - start > 18) {
+            return false;
+        }
+        for (int i = start; i < value.length(); i++) {
+            if (!isDigit(value.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the epoch milliseconds of the ISO-8601 value, or Long.MIN_VALUE if it is not a valid ISO-8601 date
+     */
+    private static long parseIso8601(String value) {
+        int length = value.length();
+        if (length < 10 || value.charAt(4) != '-' || value.charAt(7) != '-') {
+            return Long.MIN_VALUE;
+        }
+        int year = digits(value, 0, 4);
+        int month = digits(value, 5, 2);
+        int day = digits(value, 8, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)) {
+            return Long.MIN_VALUE;
+        }
+        int hour = 0, minute = 0, second = 0, millis = 0;
+        int index = 10;
+        if (index < length && (value.charAt(index) == 'T' || value.charAt(index) == 't')) {
+            if (length < index + 6 || value.charAt(index + 3) != ':') {
+                return Long.MIN_VALUE;
+            }
+            hour = digits(value, index + 1, 2);
+            minute = digits(value, index + 4, 2);
+            index += 6;
+            if (index < length && value.charAt(index) == ':') {
+                second = digits(value, index + 1, 2);
+                index += 3;
+                if (index < length && (value.charAt(index) == '.' || value.charAt(index) == ',')) {
+                    index++;
+                    int fractionStart = index;
+                    int scale = 100;
+                    while (index < length && isDigit(value.charAt(index))) {
+                        millis += (value.charAt(index) - '0') * scale;
+                        scale /= 10;
+                        index++;
+                    }
+                    if (index == fractionStart) {
+                        return Long.MIN_VALUE;
+                    }
+                }
+            }
+            if (hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+                return Long.MIN_VALUE;
+            }
+        }
+
+        long local = daysFromCivil(year, month, day) * MILLIS_PER_DAY
+                + ((hour * 60L + minute) * 60L + second) * 1000L + millis;
+        if (index == length) {
+            TimeZone timeZone = TimeZone.getDefault();
+            return local - timeZone.getOffset(local - timeZone.getOffset(local));
+        }
+        char sign = value.charAt(index);
+        if ((sign == 'Z' || sign == 'z') && index + 1 == length) {
+            return local;
+        }
+        if (sign != '+' && sign != '-') {
+            return Long.MIN_VALUE;
+        }
+        int offsetHours = digits(value, index + 1, 2);
+        int offsetMinutes;
+        if (length == index + 3) {
+            offsetMinutes = 0;
+        } else if (length == index + 5) {
+            offsetMinutes = digits(value, index + 3, 2);
+        } else if (length == index + 6 && value.charAt(index + 3) == ':') {
+            offsetMinutes = digits(value, index + 4, 2);
+        } else {
+            return Long.MIN_VALUE;
+        }
+        if (offsetHours < 0 || offsetHours > 18 || offsetMinutes < 0 || offsetMinutes > 59) {
+            return Long.MIN_VALUE;
+        }
+        long offset = (offsetHours * 60L + offsetMinutes) * 60L * 1000L;
+        return sign == '+' ? local - offset : local + offset;
+    }
+
+    /**
+     * @return the value of count digits starting at start, or -1 if one of them is not a digit
+     */
+    private static int digits(String value, int start, int count) {
+        if (start + count > value.length()) {
+            return -1;
+        }
+        int result = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = value.charAt(i);
+            if (!isDigit(c)) {
+                return -1;
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static int daysInMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+                return leap ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    /**
+     * Days since 1970-01-01 of a proleptic gregorian date
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = (y >= 0 ? y : y - 399) / 400;
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+}
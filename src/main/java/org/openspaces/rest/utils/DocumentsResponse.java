@@ -0,0 +1,119 @@
+/*
+ * Copyright 2015 GigaSpaces Technologies Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at *
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License."
+ */
+package org.openspaces.rest.utils;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+
+import java.io.IOException;
+
+/**
+ * A successful response carrying space documents.
+ * <p/>
+ * The response serializes itself straight into the generator of the message converter, so the documents
+ * are written to the servlet output stream one by one, without building an intermediate json tree:
+ * { "status" : "success", "data" : [{...}, {...}] }
+ * <p/>
+ * Paged reads add the token of the cursor to resume from, as long as there are more documents to read:
+ * { "status" : "success", "data" : [{...}, {...}], "cursor" : "..." }
+ *
+ * @since 12.0
+ */
+public class DocumentsResponse implements JsonSerializable {
+    private final Object[] documents;
+    private final String cursor;
+
+    public DocumentsResponse(Object[] documents) {
+        this(documents, null);
+    }
+
+    public DocumentsResponse(Object[] documents, String cursor) {
+        this.documents = documents == null ? new Object[0] : documents;
+        this.cursor = cursor;
+    }
+
+    public String getStatus() {
+        return "success";
+    }
+
+    public Object[] getDocuments() {
+        return documents;
+    }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    /**
+     * @return the failure which ended a response after it started, or null
+     */
+    public ErrorMessage getError() {
+        return null;
+    }
+
+    @Override
+    public void serialize(JsonGenerator generator, SerializerProvider provider) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("status", getStatus());
+        generator.writeArrayFieldStart("data");
+        writeDocuments(generator, documentWriter());
+        generator.writeEndArray();
+        if (cursor != null) {
+            generator.writeStringField("cursor", cursor);
+        }
+        generator.writeEndObject();
+    }
+
+    /**
+     * Writes the documents as the elements of the data array
+     */
+    protected void writeDocuments(JsonGenerator generator, ObjectWriter writer) throws IOException {
+        long start = RequestMetrics.startSerialize();
+        try {
+            for (Object document : documents) {
+                writer.writeValue(generator, document);
+            }
+        } finally {
+            RequestMetrics.endSerialize(start);
+        }
+    }
+
+    /**
+     * Documents are written with the configured mapper so dates and nested documents keep their format
+     */
+    protected static ObjectWriter documentWriter() {
+        return ControllerUtils.mapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    static void writeErrorMessage(JsonGenerator generator, ErrorMessage error) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("message", error.getMessage());
+        if (error instanceof ExceptionMessage) {
+            generator.writeStringField("javaclass", ((ExceptionMessage) error).getJavaclass());
+        }
+        generator.writeEndObject();
+    }
+
+    @Override
+    public void serializeWithType(JsonGenerator generator, SerializerProvider provider, TypeSerializer typeSerializer)
+            throws IOException {
+        serialize(generator, provider);
+    }
+}
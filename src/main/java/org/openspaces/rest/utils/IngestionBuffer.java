@@ -0,0 +1,270 @@
+/*
+ * Copyright 2015 GigaSpaces Technologies Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at *
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License."
+ */
+package org.openspaces.rest.utils;
+
+import com.gigaspaces.client.WriteModifiers;
+import com.gigaspaces.document.SpaceDocument;
+import net.jini.core.lease.Lease;
+import org.openspaces.core.GigaSpace;
+import org.openspaces.rest.exceptions.BufferFullException;
+import org.openspaces.rest.exceptions.PayloadTooLargeException;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Write-behind buffer of the documents posted with mode=buffered.
+ * <p/>
+ * Documents are queued per space and type, and written to space with one writeMultiple call per flushSize
+ * documents. A queue is flushed as soon as it holds flushSize documents, and every flushInterval milliseconds
+ * whatever its size, so many small requests end up as a few large writes. Each queue holds at most capacity
+ * documents, including the documents being flushed; once it is full new documents are rejected until a flush
+ * makes room. Documents which fail to be written are dropped and counted as failed.
+ * <p/>
+ * {@link #shutdown()} stops accepting documents and flushes everything which is still queued. Documents are
+ * queued under the read lock of acceptLock and shutdown takes its write lock, so every document which was
+ * accepted before the shutdown is queued by the time the queues are drained.
+ *
+ * @since 12.0
+ */
+public class IngestionBuffer {
+    private static final Logger logger = Logger.getLogger(IngestionBuffer.class.getName());
+
+    private final ConcurrentHashMap<String, TypeQueue> queues = new ConcurrentHashMap<String, TypeQueue>();
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong flushed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final ReadWriteLock acceptLock = new ReentrantReadWriteLock();
+    private volatile int capacity = 10000;
+    private volatile int flushSize = 1000;
+    private volatile long flushInterval = 1000;
+    private volatile boolean shutdown;
+    private volatile ScheduledExecutorService scheduler;
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public void setFlushSize(int flushSize) {
+        this.flushSize = flushSize;
+    }
+
+    public void setFlushInterval(long flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+
+    /**
+     * Queues the documents for writing.
+     *
+     * @throws PayloadTooLargeException if there are more documents than the capacity, none of them is queued
+     * @throws BufferFullException if the queue of the type has no room for all the documents, none of them is queued
+     */
+    public void add(GigaSpace gigaSpace, String type, SpaceDocument[] documents) {
+        int capacity = this.capacity;
+        if (documents.length > capacity) {
+            rejected.addAndGet(documents.length);
+            throw new PayloadTooLargeException(type, capacity);
+        }
+        TypeQueue queue;
+        int pending;
+        acceptLock.readLock().lock();
+        try {
+            if (shutdown) {
+                throw new IllegalStateException("Ingestion buffer is shut down");
+            }
+            queue = getQueue(gigaSpace, type);
+            if (!queue.room.tryAcquire(documents.length)) {
+                rejected.addAndGet(documents.length);
+                throw new BufferFullException(type, capacity);
+            }
+            queue.gigaSpace = gigaSpace;
+            for (SpaceDocument document : documents) {
+                queue.documents.add(document);
+            }
+            pending = queue.pending.addAndGet(documents.length);
+            accepted.addAndGet(documents.length);
+        } finally {
+            acceptLock.readLock().unlock();
+        }
+        if (pending >= flushSize) {
+            flushLater(queue);
+        }
+    }
+
+    /**
+     * Stops accepting documents and writes all the queued documents to space
+     */
+    public void shutdown() {
+        //waits for the documents being added, the write lock is taken before the monitor which add may need
+        acceptLock.writeLock().lock();
+        try {
+            shutdown = true;
+        } finally {
+            acceptLock.writeLock().unlock();
+        }
+        drain();
+    }
+
+    private synchronized void drain() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            try {
+                scheduler.awaitTermination(flushInterval + 10000, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (TypeQueue queue : queues.values()) {
+            queue.flush(true);
+        }
+        logger.info("ingestion buffer drained, " + flushed.get() + " documents flushed, " + failed.get() + " failed");
+    }
+
+    public Map<String, Object> toMap() {
+        long pending = 0;
+        for (TypeQueue queue : queues.values()) {
+            pending += queue.pendingCount();
+        }
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+        result.put("accepted", accepted.get());
+        result.put("rejected", rejected.get());
+        result.put("flushed", flushed.get());
+        result.put("failed", failed.get());
+        result.put("pending", pending);
+        return result;
+    }
+
+    private TypeQueue getQueue(GigaSpace gigaSpace, String type) {
+        String key = gigaSpace.getSpace().getName() + "/" + type;
+        TypeQueue queue = queues.get(key);
+        if (queue == null) {
+            TypeQueue newQueue = new TypeQueue(type, gigaSpace, capacity);
+            queue = queues.putIfAbsent(key, newQueue);
+            if (queue == null) {
+                queue = newQueue;
+                startScheduler();
+            }
+        }
+        return queue;
+    }
+
+    private synchronized void startScheduler() {
+        if (scheduler != null || shutdown) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "rest-ingestion-buffer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                for (TypeQueue queue : queues.values()) {
+                    queue.flush(true);
+                }
+            }
+        }, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    private void flushLater(final TypeQueue queue) {
+        ScheduledExecutorService current = scheduler;
+        if (current == null || current.isShutdown()) {
+            return;
+        }
+        try {
+            current.execute(new Runnable() {
+                @Override
+                public void run() {
+                    queue.flush(false);
+                }
+            });
+        } catch (RuntimeException e) {
+            //shutting down, the queue is drained by shutdown()
+        }
+    }
+
+    private class TypeQueue {
+        private final String type;
+        private final Semaphore room;
+        private final ConcurrentLinkedQueue<SpaceDocument> documents = new ConcurrentLinkedQueue<SpaceDocument>();
+        private final AtomicInteger pending = new AtomicInteger();
+        private volatile GigaSpace gigaSpace;
+
+        private TypeQueue(String type, GigaSpace gigaSpace, int capacity) {
+            this.type = type;
+            this.gigaSpace = gigaSpace;
+            this.room = new Semaphore(capacity);
+        }
+
+        private int pendingCount() {
+            return pending.get();
+        }
+
+        /**
+         * @param all true to write all the queued documents, false to write full batches only
+         */
+        private synchronized void flush(boolean all) {
+            int size = flushSize;
+            while (pending.get() >= size || (all && pending.get() > 0)) {
+                List<SpaceDocument> batch = new ArrayList<SpaceDocument>(Math.min(size, pending.get()));
+                SpaceDocument document;
+                while (batch.size() < size && (document = documents.poll()) != null) {
+                    batch.add(document);
+                }
+                if (batch.isEmpty()) {
+                    return;
+                }
+                pending.addAndGet(-batch.size());
+                try {
+                    gigaSpace.writeMultiple(batch.toArray(new SpaceDocument[batch.size()]), Lease.FOREVER, WriteModifiers.UPDATE_OR_WRITE);
+                    flushed.addAndGet(batch.size());
+                    if (logger.isLoggable(Level.FINE))
+                        logger.fine("flushed " + batch.size() + " buffered documents of type: " + type);
+                } catch (Exception e) {
+                    failed.addAndGet(batch.size());
+                    logger.log(Level.WARNING, "failed to flush " + batch.size() + " buffered documents of type: " + type, e);
+                } finally {
+                    room.release(batch.size());
+                    ControllerUtils.responseCache.invalidate(gigaSpace, type);
+                }
+            }
+        }
+    }
+}
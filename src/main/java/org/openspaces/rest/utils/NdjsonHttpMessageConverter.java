@@ -0,0 +1,87 @@
+/*
+ * Copyright 2015 GigaSpaces Technologies Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at *
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License."
+ */
+package org.openspaces.rest.utils;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import java.io.IOException;
+
+/**
+ * Writes documents responses as newline delimited json (application/x-ndjson): one document per line, without
+ * the status envelope.
+ * <p/>
+ * Every line is flushed as soon as the document is serialized, so a client can process the first documents
+ * while the rest are still being read from space. The cursor of a paged read is returned in the X-Cursor header.
+ * A failure after the response started is reported as a last line: { "status" : "error", "error" : {...} }
+ *
+ * @since 12.0
+ */
+public class NdjsonHttpMessageConverter extends AbstractHttpMessageConverter<DocumentsResponse> {
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+    public static final String CURSOR_HEADER = "X-Cursor";
+
+    public NdjsonHttpMessageConverter() {
+        super(MediaType.parseMediaType(APPLICATION_NDJSON_VALUE));
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return DocumentsResponse.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected DocumentsResponse readInternal(Class<? extends DocumentsResponse> clazz, HttpInputMessage inputMessage)
+            throws IOException, HttpMessageNotReadableException {
+        throw new HttpMessageNotReadableException(APPLICATION_NDJSON_VALUE + " is supported for responses only");
+    }
+
+    @Override
+    protected void writeInternal(DocumentsResponse response, HttpOutputMessage outputMessage) throws IOException {
+        //headers must be set before the body is opened
+        if (response.getCursor() != null) {
+            outputMessage.getHeaders().set(CURSOR_HEADER, response.getCursor());
+        }
+        JsonGenerator generator = ControllerUtils.mapper.getFactory().createGenerator(outputMessage.getBody(), JsonEncoding.UTF8);
+        //documents are root values, separated by new lines and flushed one by one
+        generator.setRootValueSeparator(new SerializedString("\n"));
+        response.writeDocuments(generator, ControllerUtils.mapper.writer().with(SerializationFeature.FLUSH_AFTER_WRITE_VALUE));
+        ErrorMessage error = response.getError();
+        if (error != null) {
+            generator.writeStartObject();
+            generator.writeStringField("status", "error");
+            generator.writeFieldName("error");
+            DocumentsResponse.writeErrorMessage(generator, error);
+            generator.writeEndObject();
+        }
+        if (generator.getOutputContext().getEntryCount() > 0) {
+            generator.writeRaw('\n');
+        }
+        generator.flush();
+    }
+}
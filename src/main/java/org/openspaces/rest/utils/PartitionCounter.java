@@ -0,0 +1,120 @@
+/*
+ * Copyright 2015 GigaSpaces Technologies Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at *
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License."
+ */
+package org.openspaces.rest.utils;
+
+import com.j_spaces.core.client.SQLQuery;
+import org.openspaces.core.GigaSpace;
+import org.openspaces.rest.exceptions.RestException;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts the entries matching a query in each partition of the space, all partitions in parallel.
+ * <p/>
+ * The count of partition i is routed to it with routing value i: integer routing values are assigned to
+ * partition value % partitions. A space which is not partitioned is counted as a single partition.
+ * <p/>
+ * The partitions are counted by a pool of at most poolSize threads, shared by all the requests. When all of them
+ * are busy the request thread counts the partition itself.
+ *
+ * @since 12.0
+ */
+public class PartitionCounter {
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(16, 16, 60, TimeUnit.SECONDS,
+            new SynchronousQueue<Runnable>(), new ThreadFactory() {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "rest-partition-counter-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }, new ThreadPoolExecutor.CallerRunsPolicy());
+
+    public PartitionCounter() {
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    public synchronized void setPoolSize(int poolSize) {
+        //the core size can never exceed the max size
+        if (poolSize > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(poolSize);
+            executor.setCorePoolSize(poolSize);
+        } else {
+            executor.setCorePoolSize(poolSize);
+            executor.setMaximumPoolSize(poolSize);
+        }
+    }
+
+    public static int getNumberOfPartitions(GigaSpace gigaSpace) {
+        int partitions = gigaSpace.getSpace().getDirectProxy().getSpaceClusterInfo().getNumberOfPartitions();
+        return Math.max(partitions, 1);
+    }
+
+    /**
+     * @return an entry per partition: { "partition" : 0, "count" : 1000 }
+     */
+    public List<Map<String, Object>> count(final GigaSpace gigaSpace, final String type, final String query) {
+        int partitions = getNumberOfPartitions(gigaSpace);
+        List<Future<Integer>> futures = new ArrayList<Future<Integer>>(partitions);
+        for (int i = 0; i < partitions; i++) {
+            final SQLQuery<Object> sqlQuery = new SQLQuery<Object>(type, query);
+            if (partitions > 1) {
+                sqlQuery.setRouting(i);
+            }
+            futures.add(executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return gigaSpace.count(sqlQuery);
+                }
+            }));
+        }
+        List<Map<String, Object>> result = new ArrayList<Map<String, Object>>(partitions);
+        for (int i = 0; i < partitions; i++) {
+            Map<String, Object> partition = new LinkedHashMap<String, Object>();
+            partition.put("partition", i);
+            partition.put("count", await(futures.get(i)));
+            result.add(partition);
+        }
+        return result;
+    }
+
+    private static int await(Future<Integer> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RestException("Interrupted while counting entries");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RestException(e.getCause().getMessage());
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2015 GigaSpaces Technologies Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at *
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License."
+ */
+package org.openspaces.rest.utils;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * Writes the request metrics in the prometheus text exposition format (text/plain; version=0.0.4).
+ *
+ * @since 12.0
+ */
+public class PrometheusHttpMessageConverter extends AbstractHttpMessageConverter<RequestMetrics> {
+    public static final String TEXT_PROMETHEUS_VALUE = "text/plain;version=0.0.4;charset=UTF-8";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    public PrometheusHttpMessageConverter() {
+        super(MediaType.parseMediaType(TEXT_PROMETHEUS_VALUE));
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return RequestMetrics.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected RequestMetrics readInternal(Class<? extends RequestMetrics> clazz, HttpInputMessage inputMessage)
+            throws IOException, HttpMessageNotReadableException {
+        throw new HttpMessageNotReadableException(TEXT_PROMETHEUS_VALUE + " is supported for responses only");
+    }
+
+    @Override
+    protected void writeInternal(RequestMetrics metrics, HttpOutputMessage outputMessage) throws IOException {
+        outputMessage.getBody().write(metrics.toPrometheus().getBytes(UTF8));
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2015 GigaSpaces Technologies Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at *
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License."
+ */
+package org.openspaces.rest.utils;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+
+import java.io.IOException;
+
+/**
+ * A value which was already serialized to json, such as a document held by the {@link ResponseCache}.
+ * <p/>
+ * The json is copied as is into json responses. Smile responses cannot take raw json, so the value is streamed
+ * into them token by token.
+ *
+ * @since 12.0
+ */
+public class RawJsonValue implements JsonSerializable {
+    private final String json;
+
+    public RawJsonValue(String json) {
+        this.json = json;
+    }
+
+    public String getJson() {
+        return json;
+    }
+
+    @Override
+    public void serialize(JsonGenerator generator, SerializerProvider provider) throws IOException {
+        long start = RequestMetrics.startSerialize();
+        try {
+            if (!(generator instanceof SmileGenerator)) {
+                generator.writeRawValue(json);
+                return;
+            }
+            JsonParser parser = ControllerUtils.mapper.getFactory().createParser(json);
+            try {
+                parser.nextToken();
+                generator.copyCurrentStructure(parser);
+            } finally {
+                parser.close();
+            }
+        } finally {
+            RequestMetrics.endSerialize(start);
+        }
+    }
+
+    @Override
+    public void serializeWithType(JsonGenerator generator, SerializerProvider provider, TypeSerializer typeSerializer)
+            throws IOException {
+        serialize(generator, provider);
+    }
+}
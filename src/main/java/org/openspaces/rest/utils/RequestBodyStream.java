@@ -0,0 +1,87 @@
+/*
+ * Copyright 2015 GigaSpaces Technologies Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at *
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License."
+ */
+package org.openspaces.rest.utils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The body of a request which is read by a pool thread, after the container thread was released.
+ * <p/>
+ * Once the container completed the request, e.g. because the client went away, it may recycle the request and
+ * its stream for another request. The body is then detached and every further read fails, so the pool thread
+ * never reads the body of another request. A read which is in progress when the body is detached finishes first.
+ *
+ * @since 12.0
+ */
+public class RequestBodyStream extends FilterInputStream {
+    private boolean detached;
+
+    public RequestBodyStream(InputStream in) {
+        super(in);
+    }
+
+    /**
+     * Called once the request was completed, waits for a read in progress
+     */
+    public synchronized void detach() {
+        detached = true;
+    }
+
+    @Override
+    public synchronized int read() throws IOException {
+        ensureAttached();
+        return super.read();
+    }
+
+    @Override
+    public synchronized int read(byte[] b, int off, int len) throws IOException {
+        ensureAttached();
+        return super.read(b, off, len);
+    }
+
+    @Override
+    public synchronized long skip(long n) throws IOException {
+        ensureAttached();
+        return super.skip(n);
+    }
+
+    @Override
+    public synchronized int available() throws IOException {
+        ensureAttached();
+        return super.available();
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        //the container closes the stream of a completed request
+        if (!detached) {
+            super.close();
+        }
+    }
+
+    private void ensureAttached() throws IOException {
+        if (detached) {
+            throw new IOException("The request was completed before its body was read");
+        }
+    }
+}
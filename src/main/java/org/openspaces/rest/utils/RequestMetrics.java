@@ -0,0 +1,436 @@
+/*
+ * Copyright 2015 GigaSpaces Technologies Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at *
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License."
+ */
+package org.openspaces.rest.utils;
+
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histograms of the requests handled by the gateway, per endpoint, type and phase.
+ * <p/>
+ * A request is timed from the moment it entered the gateway, see {@link SlowOperationFilter}, or else from the
+ * moment its handler is called, until its response was written or it timed out. The time it waits in the queue
+ * of the async pool is part of its total. While the handler runs on the
+ * async pool, the time it spends in each {@link Phase} is added to its timer, which is reachable from the handler
+ * thread through {@link #current()}. The message converters write the response body later, on a container
+ * thread, and time their serialization through the timer held by the request, see {@link #startSerialize()}.
+ * Once the response was written the total time of the request and the time of every phase it went through are
+ * recorded in the histograms.
+ * <p/>
+ * A request is recorded under its type once the type was resolved through the {@link TypeDescriptorCache} or
+ * its handler returned, i.e. the space accepted the type. Requests which failed before their type was known, such
+ * as the requests to types which do not exist, are recorded under {@link #UNKNOWN_TYPE}, so requests to random
+ * types do not add histograms.
+ * <p/>
+ * The histograms are cumulative since the gateway started. Timers also carry what the {@link SlowOperationLog}
+ * reports about a request: its query, max and number of documents.
+ *
+ * @since 12.0
+ */
+public class RequestMetrics {
+    public static final String TOTAL = "total";
+    /**
+     * The type of the requests whose type was not known to exist
+     */
+    public static final String UNKNOWN_TYPE = "_unknown";
+    /**
+     * The request attribute which holds the timer of the request, so it can be completed once the response is written
+     */
+    public static final String TIMER_ATTRIBUTE = RequestMetrics.class.getName() + ".timer";
+    /**
+     * The request attribute which holds the value of System.nanoTime() when the request entered the gateway
+     */
+    public static final String START_ATTRIBUTE = RequestMetrics.class.getName() + ".start";
+    static final double[] QUANTILES = {0.5, 0.99, 0.999};
+
+    public enum Phase {
+        /** reading the request body */
+        PARSE,
+        /** loading a type descriptor which was not in the type descriptor cache */
+        DESCRIPTOR,
+        /** calling the space */
+        SPACE,
+        /** converting results with jackson, inside the handler or while the response is written */
+        SERIALIZE;
+
+        public String label() {
+            return name().toLowerCase(Locale.ENGLISH);
+        }
+    }
+
+    private static final ThreadLocal<Timer> current = new ThreadLocal<Timer>();
+
+    private final ConcurrentHashMap<Key, LatencyHistogram> histograms = new ConcurrentHashMap<Key, LatencyHistogram>();
+
+    /**
+     * Starts timing a request
+     */
+    public Timer start(String endpoint, String type) {
+        return new Timer(endpoint, type, System.nanoTime());
+    }
+
+    /**
+     * Starts timing a request which started earlier
+     *
+     * @param start the value of System.nanoTime() when the request started
+     */
+    public Timer start(String endpoint, String type, long start) {
+        return new Timer(endpoint, type, start);
+    }
+
+    /**
+     * Records the timings of the request once it is done. A request is recorded once, whether it completed or
+     * timed out first.
+     *
+     * @return false if the request was already recorded
+     */
+    public boolean stop(Timer timer) {
+        if (!timer.stopped.compareAndSet(false, true)) {
+            return false;
+        }
+        long total = System.nanoTime() - timer.start;
+        String type = timer.typeKnown ? timer.type : UNKNOWN_TYPE;
+        histogram(timer.endpoint, type, TOTAL).record(total);
+        for (Phase phase : Phase.values()) {
+            if (timer.entered.get(phase.ordinal()) > 0) {
+                histogram(timer.endpoint, type, phase.label()).record(timer.nanos.get(phase.ordinal()));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The handler of the request starts running on the current thread
+     */
+    public static void attach(Timer timer) {
+        timer.queueNanos = System.nanoTime() - timer.start;
+        current.set(timer);
+    }
+
+    /**
+     * The handler of the request returned
+     */
+    public static void detach(Timer timer) {
+        timer.handlerNanos = System.nanoTime() - timer.start;
+        if (current.get() == timer) {
+            current.remove();
+        }
+    }
+
+    /**
+     * @return the timer of the request handled by the current thread, or null if the thread is not handling one
+     */
+    public static Timer current() {
+        return current.get();
+    }
+
+    /**
+     * Starts timing the serialization of a response by a message converter, with the timer held by the request
+     * which is being written. The timer is attached to the current thread until {@link #endSerialize(long)}.
+     *
+     * @return the start of the serialization, or -1 if the request is not timed or the serialization is already
+     * timed, by the handler or by an enclosing value
+     */
+    public static long startSerialize() {
+        if (current.get() != null) {
+            return -1;
+        }
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        Timer timer = attributes == null ? null : (Timer) attributes.getAttribute(TIMER_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (timer == null) {
+            return -1;
+        }
+        current.set(timer);
+        return System.nanoTime();
+    }
+
+    /**
+     * @param start the value returned by {@link #startSerialize()}
+     */
+    public static void endSerialize(long start) {
+        if (start < 0) {
+            return;
+        }
+        Timer timer = current.get();
+        current.remove();
+        if (timer != null) {
+            timer.add(Phase.SERIALIZE, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Adds the time since start to the phase of the request handled by the current thread, if there is one
+     */
+    public static void phase(Phase phase, long start) {
+        Timer timer = current.get();
+        if (timer != null) {
+            timer.add(phase, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * The type was found in space by the request handled by the current thread, if it is the type of the request
+     */
+    public static void typeResolved(String type) {
+        Timer timer = current.get();
+        if (timer != null && timer.type.equals(type)) {
+            timer.typeKnown = true;
+        }
+    }
+
+    /**
+     * Describes the request handled by the current thread, for the slow operation log
+     */
+    public static void describe(String query, Integer max) {
+        Timer timer = current.get();
+        if (timer != null) {
+            timer.query = query;
+            timer.max = max;
+        }
+    }
+
+    /**
+     * Sets the number of documents returned, written or removed by the request handled by the current thread
+     */
+    public static void documents(int documents) {
+        Timer timer = current.get();
+        if (timer != null) {
+            timer.documents = documents;
+        }
+    }
+
+    public void clear() {
+        histograms.clear();
+    }
+
+    /**
+     * @return the histograms as a list of { endpoint, type, phase, count, p50, p99, p999, max } entries,
+     * durations in milliseconds
+     */
+    public List<Map<String, Object>> toList() {
+        List<Map<String, Object>> result = new ArrayList<Map<String, Object>>();
+        for (Map.Entry<Key, LatencyHistogram> entry : sortedHistograms()) {
+            Key key = entry.getKey();
+            LatencyHistogram histogram = entry.getValue();
+            Map<String, Object> map = new LinkedHashMap<String, Object>();
+            map.put("endpoint", key.endpoint);
+            map.put("type", key.type);
+            map.put("phase", key.phase);
+            map.put("count", histogram.getCount());
+            map.put("p50", millis(histogram.getValueAtQuantile(0.5)));
+            map.put("p99", millis(histogram.getValueAtQuantile(0.99)));
+            map.put("p999", millis(histogram.getValueAtQuantile(0.999)));
+            map.put("max", millis(histogram.getMax()));
+            result.add(map);
+        }
+        return result;
+    }
+
+    /**
+     * @return the histograms in the prometheus text format, as summaries in seconds
+     */
+    public String toPrometheus() {
+        StringBuilder text = new StringBuilder();
+        text.append("# HELP xap_rest_request_duration_seconds Time spent handling requests, by endpoint, type and phase\n");
+        text.append("# TYPE xap_rest_request_duration_seconds summary\n");
+        List<Map.Entry<Key, LatencyHistogram>> entries = sortedHistograms();
+        for (Map.Entry<Key, LatencyHistogram> entry : entries) {
+            String labels = entry.getKey().labels();
+            LatencyHistogram histogram = entry.getValue();
+            for (double quantile : QUANTILES) {
+                text.append("xap_rest_request_duration_seconds{").append(labels).append(",quantile=\"").append(quantile)
+                        .append("\"} ").append(seconds(histogram.getValueAtQuantile(quantile))).append('\n');
+            }
+            text.append("xap_rest_request_duration_seconds_sum{").append(labels).append("} ")
+                    .append(seconds(histogram.getSum())).append('\n');
+            text.append("xap_rest_request_duration_seconds_count{").append(labels).append("} ")
+                    .append(histogram.getCount()).append('\n');
+        }
+        text.append("# HELP xap_rest_request_duration_seconds_max Longest request, by endpoint, type and phase\n");
+        text.append("# TYPE xap_rest_request_duration_seconds_max gauge\n");
+        for (Map.Entry<Key, LatencyHistogram> entry : entries) {
+            text.append("xap_rest_request_duration_seconds_max{").append(entry.getKey().labels()).append("} ")
+                    .append(seconds(entry.getValue().getMax())).append('\n');
+        }
+        return text.toString();
+    }
+
+    private LatencyHistogram histogram(String endpoint, String type, String phase) {
+        Key key = new Key(endpoint, type, phase);
+        LatencyHistogram histogram = histograms.get(key);
+        if (histogram == null) {
+            LatencyHistogram newHistogram = new LatencyHistogram();
+            histogram = histograms.putIfAbsent(key, newHistogram);
+            if (histogram == null) {
+                histogram = newHistogram;
+            }
+        }
+        return histogram;
+    }
+
+    private List<Map.Entry<Key, LatencyHistogram>> sortedHistograms() {
+        List<Map.Entry<Key, LatencyHistogram>> entries = new ArrayList<Map.Entry<Key, LatencyHistogram>>(histograms.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<Key, LatencyHistogram>>() {
+            @Override
+            public int compare(Map.Entry<Key, LatencyHistogram> e1, Map.Entry<Key, LatencyHistogram> e2) {
+                return e1.getKey().toString().compareTo(e2.getKey().toString());
+            }
+        });
+        return entries;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1000000d;
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / 1000000000d;
+    }
+
+    /**
+     * The phases of a single request. Phases may be added from other threads working for the request, such as
+     * the chunk writers.
+     */
+    public static class Timer {
+        private final String endpoint;
+        private final String type;
+        private final long start;
+        private final AtomicLongArray nanos = new AtomicLongArray(Phase.values().length);
+        private final AtomicLongArray entered = new AtomicLongArray(Phase.values().length);
+        private volatile long queueNanos = -1;
+        private volatile long handlerNanos = -1;
+        private volatile String query;
+        private volatile Integer max;
+        private volatile int documents = -1;
+        private volatile boolean typeKnown;
+        private final AtomicBoolean stopped = new AtomicBoolean();
+
+        private Timer(String endpoint, String type, long start) {
+            this.endpoint = endpoint;
+            this.type = type == null ? "" : type;
+            this.start = start;
+        }
+
+        public void add(Phase phase, long nanos) {
+            this.nanos.addAndGet(phase.ordinal(), nanos);
+            entered.incrementAndGet(phase.ordinal());
+        }
+
+        public String getEndpoint() {
+            return endpoint;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        /**
+         * @return the value of System.nanoTime() when the request started
+         */
+        public long getStart() {
+            return start;
+        }
+
+        /**
+         * @return the time until the handler started running on the async pool, or -1 if it did not start
+         */
+        public long getQueueNanos() {
+            return queueNanos;
+        }
+
+        /**
+         * @return the time until the handler returned, or -1 if it is still running
+         */
+        public long getHandlerNanos() {
+            return handlerNanos;
+        }
+
+        public String getQuery() {
+            return query;
+        }
+
+        public Integer getMax() {
+            return max;
+        }
+
+        public void setDocuments(int documents) {
+            this.documents = documents;
+        }
+
+        /**
+         * @return the number of documents of the request, or -1 if it is not known
+         */
+        public int getDocuments() {
+            return documents;
+        }
+
+        /**
+         * @return the time spent in the phase, or -1 if the request did not go through it
+         */
+        public long getNanos(Phase phase) {
+            return entered.get(phase.ordinal()) > 0 ? nanos.get(phase.ordinal()) : -1;
+        }
+    }
+
+    private static class Key {
+        private final String endpoint;
+        private final String type;
+        private final String phase;
+
+        private Key(String endpoint, String type, String phase) {
+            this.endpoint = endpoint;
+            this.type = type;
+            this.phase = phase;
+        }
+
+        private String labels() {
+            return "endpoint=\"" + escape(endpoint) + "\",type=\"" + escape(type) + "\",phase=\"" + escape(phase) + "\"";
+        }
+
+        private static String escape(String value) {
+            return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return endpoint.equals(key.endpoint) && type.equals(key.type) && phase.equals(key.phase);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * endpoint.hashCode() + type.hashCode()) + phase.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return endpoint + "/" + type + "/" + phase;
+        }
+    }
+}
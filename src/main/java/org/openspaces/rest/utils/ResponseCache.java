@@ -0,0 +1,207 @@
+/*
+ * Copyright 2015 GigaSpaces Technologies Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at *
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License."
+ */
+package org.openspaces.rest.utils;
+
+import org.openspaces.core.GigaSpace;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Size bounded LRU cache of serialized read responses, keyed by space, type and request.
+ * <p/>
+ * Every type has a generation which is part of the keys of its entries. Writes made through the gateway move the
+ * generation of the type forward once they are done, so all of its entries become unreachable at once and age
+ * out of the LRU order. A read which started before the write stores its result under the old generation, so it
+ * can never be served after the write. Writes made elsewhere are only seen once the entries expire, after ttl
+ * milliseconds.
+ * <p/>
+ * The cache is disabled while its size is 0.
+ *
+ * @since 12.0
+ */
+public class ResponseCache {
+    private final ConcurrentHashMap<String, AtomicLong> generations = new ConcurrentHashMap<String, AtomicLong>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private volatile int maxEntries = 0;
+    private volatile long ttl = 10 * 1000;
+    //guarded by itself, iterated in access order
+    private final LinkedHashMap<String, CacheEntry> entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+            if (size() > maxEntries) {
+                evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    public boolean isEnabled() {
+        return maxEntries > 0;
+    }
+
+    /**
+     * @param maxEntries the number of responses to hold, 0 disables the cache
+     */
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+        synchronized (entries) {
+            Iterator<String> iterator = entries.keySet().iterator();
+            while (entries.size() > Math.max(maxEntries, 0) && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+    }
+
+    public void setTtl(long ttl) {
+        this.ttl = ttl;
+    }
+
+    /**
+     * @param request what identifies the response within the type, including all the parameters it depends on
+     * @return the key of the response in the current generation of the type
+     */
+    public String key(GigaSpace gigaSpace, String type, String request) {
+        String typeKey = typeKey(gigaSpace, type);
+        return typeKey + "#" + generation(typeKey).get() + "#" + request;
+    }
+
+    /**
+     * @return the cached response, or null if it is not cached or expired
+     */
+    public Object get(String key) {
+        CacheEntry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry != null && entry.expires < System.currentTimeMillis()) {
+                entries.remove(key);
+                expirations.incrementAndGet();
+                entry = null;
+            }
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.value;
+    }
+
+    public void put(String key, Object value) {
+        if (!isEnabled()) {
+            return;
+        }
+        CacheEntry entry = new CacheEntry(value, System.currentTimeMillis() + ttl);
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+    }
+
+    /**
+     * Drops all the cached responses of the type, should be called once a write to the type is done
+     */
+    public void invalidate(GigaSpace gigaSpace, String type) {
+        if (!isEnabled()) {
+            return;
+        }
+        generation(typeKey(gigaSpace, type)).incrementAndGet();
+        invalidations.incrementAndGet();
+    }
+
+    public Map<String, Object> toMap() {
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+        result.put("enabled", isEnabled());
+        result.put("size", size);
+        result.put("maxSize", maxEntries);
+        result.put("hits", hitCount);
+        result.put("misses", missCount);
+        result.put("hitRatio", hitCount + missCount == 0 ? 0d : (double) hitCount / (hitCount + missCount));
+        result.put("evictions", evictions.get());
+        result.put("expirations", expirations.get());
+        result.put("invalidations", invalidations.get());
+        return result;
+    }
+
+    /**
+     * Collapses the white space of the query outside of its string literals, so queries which differ only in
+     * their formatting share a cache entry
+     */
+    public static String normalizeQuery(String query) {
+        if (query == null) {
+            return "";
+        }
+        StringBuilder normalized = new StringBuilder(query.length());
+        boolean literal = false;
+        boolean space = false;
+        for (int i = 0; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (!literal && Character.isWhitespace(c)) {
+                space = true;
+                continue;
+            }
+            if (space && normalized.length() > 0) {
+                normalized.append(' ');
+            }
+            space = false;
+            if (c == '\'') {
+                literal = !literal;
+            }
+            normalized.append(c);
+        }
+        return normalized.toString();
+    }
+
+    private static String typeKey(GigaSpace gigaSpace, String type) {
+        return gigaSpace.getSpace().getName() + "/" + type;
+    }
+
+    private AtomicLong generation(String typeKey) {
+        AtomicLong generation = generations.get(typeKey);
+        if (generation == null) {
+            AtomicLong newGeneration = new AtomicLong();
+            generation = generations.putIfAbsent(typeKey, newGeneration);
+            if (generation == null) {
+                generation = newGeneration;
+            }
+        }
+        return generation;
+    }
+
+    private static class CacheEntry {
+        private final Object value;
+        private final long expires;
+
+        private CacheEntry(Object value, long expires) {
+            this.value = value;
+            this.expires = expires;
+        }
+    }
+}
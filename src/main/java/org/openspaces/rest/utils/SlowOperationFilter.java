@@ -0,0 +1,151 @@
+/*
+ * Copyright 2015 GigaSpaces Technologies Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at *
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License."
+ */
+package org.openspaces.rest.utils;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+/**
+ * Notes when each request entered the gateway, counts the bytes of the responses, and completes the requests
+ * which were timed by the controller once their response was written: their timings are recorded in the request
+ * metrics and handed to the slow operation log. Requests which time out are completed by the controller.
+ * <p/>
+ * The filter should be mapped first, to both the REQUEST and the ASYNC dispatchers, so it counts the bytes
+ * which were sent to the client and sees the dispatch which writes the result of an asynchronous request.
+ *
+ * @since 12.0
+ */
+public class SlowOperationFilter implements Filter {
+    private static final String RESPONSE_ATTRIBUTE = SlowOperationFilter.class.getName() + ".response";
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+        //an asynchronous request is dispatched again to write its result, through the response wrapped at first
+        CountingResponse asyncResponse = (CountingResponse) request.getAttribute(RESPONSE_ATTRIBUTE);
+        if (asyncResponse != null) {
+            try {
+                chain.doFilter(request, response);
+            } finally {
+                completeUnlessAsync(request, asyncResponse);
+            }
+            return;
+        }
+
+        request.setAttribute(RequestMetrics.START_ATTRIBUTE, System.nanoTime());
+        CountingResponse countingResponse = new CountingResponse((HttpServletResponse) response);
+        request.setAttribute(RESPONSE_ATTRIBUTE, countingResponse);
+        try {
+            chain.doFilter(request, countingResponse);
+        } finally {
+            completeUnlessAsync(request, countingResponse);
+        }
+    }
+
+    /**
+     * The response of a request which went asynchronous is written by a later dispatch, it is completed there
+     */
+    private static void completeUnlessAsync(ServletRequest request, CountingResponse response) throws IOException {
+        if (request.isAsyncStarted()) {
+            return;
+        }
+        request.removeAttribute(RESPONSE_ATTRIBUTE);
+        RequestMetrics.Timer timer = (RequestMetrics.Timer) request.getAttribute(RequestMetrics.TIMER_ATTRIBUTE);
+        if (timer != null) {
+            if (response.writer != null) {
+                response.writer.flush();
+            }
+            if (ControllerUtils.metrics.stop(timer)) {
+                ControllerUtils.slowOperations.completed(timer, response.getStatus(), response.bytes);
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    private static class CountingResponse extends HttpServletResponseWrapper {
+        private long bytes;
+        private ServletOutputStream outputStream;
+        private PrintWriter writer;
+
+        private CountingResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (writer != null) {
+                throw new IllegalStateException("getWriter() has already been called");
+            }
+            if (outputStream == null) {
+                final ServletOutputStream out = getResponse().getOutputStream();
+                outputStream = new ServletOutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        out.write(b);
+                        bytes++;
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        out.write(b, off, len);
+                        bytes += len;
+                    }
+
+                    @Override
+                    public void flush() throws IOException {
+                        out.flush();
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        out.close();
+                    }
+                };
+            }
+            return outputStream;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                if (outputStream != null) {
+                    throw new IllegalStateException("getOutputStream() has already been called");
+                }
+                String characterEncoding = getCharacterEncoding();
+                ServletOutputStream stream = getOutputStream();
+                writer = new PrintWriter(new OutputStreamWriter(stream, characterEncoding == null ? "ISO-8859-1" : characterEncoding));
+                outputStream = stream;
+            }
+            return writer;
+        }
+    }
+}
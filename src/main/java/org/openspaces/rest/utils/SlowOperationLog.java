@@ -0,0 +1,162 @@
+/*
+ * Copyright 2015 GigaSpaces Technologies Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at *
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License."
+ */
+package org.openspaces.rest.utils;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Log of the requests which took longer than the slow operation threshold.
+ * <p/>
+ * Every slow request is logged once, at WARNING level, as a single json record holding its endpoint, type,
+ * query, max, the number of documents it returned, wrote or removed, the bytes of its response, its status and
+ * the time it spent in every phase. The most recent records are also held in a ring buffer of capacity records.
+ * <p/>
+ * A request is complete once its response was written, see {@link SlowOperationFilter}, or once it timed out.
+ * Its duration counts from the moment it entered the gateway. A negative threshold disables the log.
+ *
+ * @since 12.0
+ */
+public class SlowOperationLog {
+    private static final Logger logger = Logger.getLogger(SlowOperationLog.class.getName());
+
+    private final AtomicLong logged = new AtomicLong();
+    private volatile long threshold = 1000;
+    //guarded by this
+    private Map<String, Object>[] records = newRecords(100);
+    private int next;
+    private int size;
+
+    public long getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * @param threshold in milliseconds, requests which take at least threshold milliseconds are logged
+     */
+    public void setThreshold(long threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * @param capacity the number of recent records to keep, the kept records are dropped
+     */
+    public synchronized void setCapacity(int capacity) {
+        records = newRecords(Math.max(capacity, 0));
+        next = 0;
+        size = 0;
+    }
+
+    /**
+     * Logs the request if it is slow
+     *
+     * @param status the status of the response, or null if it is not known
+     * @param bytes  the number of bytes of the response, or -1 if it is not known
+     */
+    public void completed(RequestMetrics.Timer timer, Integer status, long bytes) {
+        long threshold = this.threshold;
+        long duration = System.nanoTime() - timer.getStart();
+        if (threshold < 0 || duration < threshold * 1000000) {
+            return;
+        }
+        Map<String, Object> record = new LinkedHashMap<String, Object>();
+        record.put("timestamp", System.currentTimeMillis());
+        record.put("endpoint", timer.getEndpoint());
+        record.put("type", timer.getType());
+        record.put("query", timer.getQuery());
+        record.put("max", timer.getMax());
+        record.put("documents", timer.getDocuments() < 0 ? null : timer.getDocuments());
+        record.put("bytes", bytes < 0 ? null : bytes);
+        record.put("status", status);
+        record.put("duration", millis(duration));
+        Map<String, Object> phases = new LinkedHashMap<String, Object>();
+        if (timer.getQueueNanos() >= 0) {
+            phases.put("queue", millis(timer.getQueueNanos()));
+        }
+        if (timer.getHandlerNanos() >= 0) {
+            phases.put("handler", millis(timer.getHandlerNanos()));
+        }
+        for (RequestMetrics.Phase phase : RequestMetrics.Phase.values()) {
+            long nanos = timer.getNanos(phase);
+            if (nanos >= 0) {
+                phases.put(phase.label(), millis(nanos));
+            }
+        }
+        record.put("phases", phases);
+
+        logged.incrementAndGet();
+        if (logger.isLoggable(Level.WARNING))
+            logger.warning("slow operation: " + toJson(record));
+        synchronized (this) {
+            if (records.length > 0) {
+                records[next] = record;
+                next = (next + 1) % records.length;
+                size = Math.min(size + 1, records.length);
+            }
+        }
+    }
+
+    /**
+     * @return the kept records, the most recent first
+     */
+    public synchronized List<Map<String, Object>> getRecords() {
+        List<Map<String, Object>> result = new ArrayList<Map<String, Object>>(size);
+        for (int i = 1; i <= size; i++) {
+            result.add(records[(next - i + records.length) % records.length]);
+        }
+        return result;
+    }
+
+    public synchronized void clear() {
+        for (int i = 0; i < records.length; i++) {
+            records[i] = null;
+        }
+        next = 0;
+        size = 0;
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+        result.put("threshold", threshold);
+        result.put("logged", logged.get());
+        result.put("operations", getRecords());
+        return result;
+    }
+
+    private static String toJson(Map<String, Object> record) {
+        try {
+            return ControllerUtils.mapper.writeValueAsString(record);
+        } catch (JsonProcessingException e) {
+            return record.toString();
+        }
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1000000d;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object>[] newRecords(int capacity) {
+        return new Map[capacity];
+    }
+}
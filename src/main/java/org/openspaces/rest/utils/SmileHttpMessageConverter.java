@@ -0,0 +1,40 @@
+/*
+ * Copyright 2015 GigaSpaces Technologies Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at *
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License."
+ */
+package org.openspaces.rest.utils;
+
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+
+import java.util.Collections;
+
+/**
+ * Writes responses in the binary smile format (application/x-jackson-smile).
+ * <p/>
+ * Responses have the same structure as their json form, and dates are written with the configured date codec.
+ * Documents responses write their documents with the gateway mapper into the smile generator, so documents are
+ * converted the same way as in json.
+ *
+ * @since 12.0
+ */
+public class SmileHttpMessageConverter extends MappingJackson2HttpMessageConverter {
+    public static final String APPLICATION_SMILE_VALUE = "application/x-jackson-smile";
+
+    public SmileHttpMessageConverter() {
+        setObjectMapper(ControllerUtils.createObjectMapper(new SmileFactory()));
+        setSupportedMediaTypes(Collections.singletonList(MediaType.parseMediaType(APPLICATION_SMILE_VALUE)));
+    }
+}
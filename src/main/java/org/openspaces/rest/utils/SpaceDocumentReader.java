@@ -0,0 +1,127 @@
+/*
+ * Copyright 2015 GigaSpaces Technologies Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at *
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License."
+ */
+package org.openspaces.rest.utils;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.gigaspaces.document.SpaceDocument;
+import org.openspaces.rest.exceptions.RestException;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads space documents from a json request body as a stream of tokens.
+ * <p/>
+ * The body is either a single json object or an array of objects. Documents are built one at a time and
+ * handed out in batches, so only the current batch is held in memory, whatever the size of the body.
+ *
+ * @since 12.0
+ */
+public class SpaceDocumentReader {
+    private final String type;
+    private final TypeDescriptorCache.CachedType cachedType;
+    private final JsonParser parser;
+    private final boolean array;
+    private boolean done;
+
+    /**
+     * @throws RestException if the body is empty
+     */
+    public SpaceDocumentReader(String type, TypeDescriptorCache.CachedType cachedType, JsonParser parser) {
+        this.type = type;
+        this.cachedType = cachedType;
+        this.parser = parser;
+        JsonToken first = nextToken();
+        if (first == null) {
+            throw new RestException("Request body cannot be empty");
+        }
+        if (first != JsonToken.START_ARRAY && first != JsonToken.START_OBJECT) {
+            throw new HttpMessageNotReadableException("Request body must be a json object or an array of json objects");
+        }
+        this.array = first == JsonToken.START_ARRAY;
+    }
+
+    /**
+     * @return the next documents of the body, at most max of them, or null if all the documents were read
+     */
+    public SpaceDocument[] nextBatch(int max) {
+        if (done) {
+            return null;
+        }
+        List<SpaceDocument> batch = new ArrayList<SpaceDocument>(Math.min(max, 1024));
+        while (batch.size() < max) {
+            if (array) {
+                JsonToken token = nextToken();
+                if (token == JsonToken.END_ARRAY) {
+                    done = true;
+                    break;
+                }
+                if (token != JsonToken.START_OBJECT) {
+                    throw new HttpMessageNotReadableException("Request body must be a json object or an array of json objects");
+                }
+            }
+            batch.add(readDocument());
+            if (!array) {
+                done = true;
+                break;
+            }
+        }
+        if (done) {
+            close();
+        }
+        return batch.isEmpty() ? null : batch.toArray(new SpaceDocument[batch.size()]);
+    }
+
+    /**
+     * Reads the fields of the current object, converting each value as soon as it is read
+     */
+    private SpaceDocument readDocument() {
+        Map<String, Object> properties = new HashMap<String, Object>();
+        try {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String propKey = parser.getCurrentName();
+                parser.nextToken();
+                Object value = ControllerUtils.mapper.readValue(parser, Object.class);
+                properties.put(propKey, ControllerUtils.convertProperty(propKey, value, cachedType));
+            }
+        } catch (IOException e) {
+            throw new HttpMessageNotReadableException(e.getMessage(), e);
+        }
+        return new SpaceDocument(type, properties);
+    }
+
+    private JsonToken nextToken() {
+        try {
+            return parser.nextToken();
+        } catch (IOException e) {
+            throw new HttpMessageNotReadableException(e.getMessage(), e);
+        }
+    }
+
+    public void close() {
+        done = true;
+        try {
+            parser.close();
+        } catch (IOException e) {
+            //nothing to do, the body was already read
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2015 GigaSpaces Technologies Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at *
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License."
+ */
+package org.openspaces.rest.utils;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+
+/**
+ * Selects the space a request works with.
+ * <p/>
+ * The space is taken from the X-Space header, or from a path prefix which is removed before the request is
+ * dispatched, so both of these read from space mySpace:
+ * curl -H "X-Space: mySpace" http://localhost:8080/Item/1
+ * curl http://localhost:8080/_space/mySpace/Item/1
+ * <p/>
+ * Requests without a selection use the configured spaceName. See {@link ControllerUtils.XapConnectionCache}.
+ * <p/>
+ * The filter should also be mapped to the ASYNC dispatcher: depending on the container, a request which went
+ * asynchronous under the forward is dispatched again to its original path, which is then forwarded again.
+ *
+ * @since 12.0
+ */
+public class SpaceSelectionFilter implements Filter {
+    public static final String SPACE_ATTRIBUTE = SpaceSelectionFilter.class.getName() + ".space";
+    public static final String SPACE_HEADER = "X-Space";
+    private static final String SPACE_PREFIX = "/_space/";
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        String path = httpRequest.getRequestURI().substring(httpRequest.getContextPath().length());
+        if (request.getDispatcherType() == DispatcherType.ASYNC && !path.startsWith(SPACE_PREFIX)
+                && request.getAttribute(SPACE_ATTRIBUTE) != null) {
+            //dispatched again to the forwarded path, the space was selected by the first dispatch
+            chain.doFilter(request, response);
+            return;
+        }
+        if (path.startsWith(SPACE_PREFIX)) {
+            int end = path.indexOf('/', SPACE_PREFIX.length());
+            String space = end == -1 ? path.substring(SPACE_PREFIX.length()) : path.substring(SPACE_PREFIX.length(), end);
+            //the request parameters are kept by the forward
+            String forwardPath = end == -1 ? "/" : path.substring(end);
+            request.setAttribute(SPACE_ATTRIBUTE, space);
+            request.getRequestDispatcher(forwardPath).forward(request, response);
+            return;
+        }
+
+        String space = httpRequest.getHeader(SPACE_HEADER);
+        if (space != null && space.length() > 0) {
+            request.setAttribute(SPACE_ATTRIBUTE, space);
+        }
+        chain.doFilter(request, response);
+    }
+
+    @Override
+    public void destroy() {
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2015 GigaSpaces Technologies Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at *
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License."
+ */
+package org.openspaces.rest.utils;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.j_spaces.core.client.SQLQuery;
+import org.openspaces.core.GigaSpace;
+
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A delete by query response which takes the matching documents from space in batches while it is written.
+ * <p/>
+ * The first batch is taken by the handler, so a request which fails before anything is removed gets the same
+ * error response as any other request. The next batches are taken while the response is written: every batch
+ * is written and flushed to the client before the next batch is taken, so the gateway holds at most one batch
+ * in memory however many documents match.
+ * <p/>
+ * Once the response started, a failure can no longer change its status. A batch which fails to be taken ends
+ * the response with an error instead, after the documents which were already taken:
+ * { "data" : [{...}, {...}], "status" : "error", "error" : { "message" : "..." } }
+ * The documents of the batch being written when the connection breaks are already removed from space.
+ *
+ * @since 12.0
+ */
+public class TakeResponse extends DocumentsResponse {
+    private static final Logger logger = Logger.getLogger(TakeResponse.class.getName());
+
+    private final GigaSpace gigaSpace;
+    private final SQLQuery<Object> query;
+    private final Object[] first;
+    private final int batchSize;
+    private final int max;
+    private final RequestMetrics.Timer timer;
+    private volatile ErrorMessage error;
+
+    /**
+     * @param first the batch taken by the handler
+     * @param timer the timer of the request, or null, the batches taken while the response is written are added
+     *              to its space phase
+     */
+    public TakeResponse(GigaSpace gigaSpace, SQLQuery<Object> query, Object[] first, int batchSize, int max,
+                        RequestMetrics.Timer timer) {
+        super(null);
+        this.gigaSpace = gigaSpace;
+        this.query = query;
+        this.first = first;
+        this.batchSize = batchSize;
+        this.max = max;
+        this.timer = timer;
+    }
+
+    @Override
+    public String getStatus() {
+        return error == null ? "success" : "error";
+    }
+
+    @Override
+    public ErrorMessage getError() {
+        return error;
+    }
+
+    @Override
+    public void serialize(JsonGenerator generator, SerializerProvider provider) throws IOException {
+        //the status is only known once all the batches were taken, so it follows the documents
+        generator.writeStartObject();
+        generator.writeArrayFieldStart("data");
+        writeDocuments(generator, documentWriter());
+        generator.writeEndArray();
+        generator.writeStringField("status", getStatus());
+        if (error != null) {
+            generator.writeFieldName("error");
+            writeErrorMessage(generator, error);
+        }
+        generator.writeEndObject();
+    }
+
+    @Override
+    protected void writeDocuments(JsonGenerator generator, ObjectWriter writer) throws IOException {
+        int taken = 0;
+        Object[] batch = first;
+        try {
+            while (batch != null) {
+                long start = RequestMetrics.startSerialize();
+                try {
+                    for (Object document : batch) {
+                        writer.writeValue(generator, document);
+                    }
+                    generator.flush();
+                } finally {
+                    RequestMetrics.endSerialize(start);
+                }
+                taken += batch.length;
+                batch = taken < max ? take(Math.min(batchSize, max - taken)) : null;
+            }
+        } finally {
+            ControllerUtils.responseCache.invalidate(gigaSpace, query.getTypeName());
+            if (timer != null) {
+                timer.setDocuments(taken);
+            }
+        }
+    }
+
+    /**
+     * @return the next batch, or null if there are no more matching documents or the batch failed to be taken
+     */
+    private Object[] take(int count) {
+        long start = System.nanoTime();
+        try {
+            Object[] batch = gigaSpace.takeMultiple(query, count);
+            return batch == null || batch.length == 0 ? null : batch;
+        } catch (RuntimeException e) {
+            if (logger.isLoggable(Level.WARNING))
+                logger.log(Level.WARNING, "failed to take a batch of type: " + query.getTypeName() + " while streaming the response", e);
+            if (ControllerUtils.typeCache.get(gigaSpace, query.getTypeName()) == null) {
+                error = new ErrorMessage("Type: " + query.getTypeName() + " is not registered in space");
+            } else {
+                error = new ExceptionMessage(e);
+            }
+            return null;
+        } finally {
+            if (timer != null) {
+                timer.add(RequestMetrics.Phase.SPACE, System.nanoTime() - start);
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2015 GigaSpaces Technologies Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at *
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License."
+ */
+package org.openspaces.rest.utils;
+
+import com.gigaspaces.metadata.SpacePropertyDescriptor;
+import com.gigaspaces.metadata.SpaceTypeDescriptor;
+import org.openspaces.core.GigaSpace;
+import org.openspaces.rest.exceptions.TypeNotFoundException;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Gateway side cache of space type descriptors, keyed by space and type name.
+ * <p/>
+ * Along with the descriptor, each entry holds a converter per fixed property, so converting request values
+ * does not go through the type manager or resolve the property type again. Entries are reloaded from the
+ * type manager once they are older than the ttl, and types which are not registered are never cached.
+ *
+ * @since 12.0
+ */
+public class TypeDescriptorCache {
+    private static final Logger logger = Logger.getLogger(TypeDescriptorCache.class.getName());
+
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, CachedType>> spaces =
+            new ConcurrentHashMap<String, ConcurrentHashMap<String, CachedType>>();
+    private volatile long ttl = 60 * 1000;
+
+    public void setTtl(long ttl) {
+        this.ttl = ttl;
+    }
+
+    /**
+     * @return the cached type, or null if the type is not registered in space
+     */
+    public CachedType get(GigaSpace gigaSpace, String typeName) {
+        ConcurrentHashMap<String, CachedType> types = getTypes(gigaSpace);
+        CachedType cachedType = types.get(typeName);
+        if (cachedType != null && System.currentTimeMillis() - cachedType.loadTime <= ttl) {
+            RequestMetrics.typeResolved(typeName);
+            return cachedType;
+        }
+        long start = System.nanoTime();
+        SpaceTypeDescriptor typeDescriptor;
+        try {
+            typeDescriptor = gigaSpace.getTypeManager().getTypeDescriptor(typeName);
+        } finally {
+            RequestMetrics.phase(RequestMetrics.Phase.DESCRIPTOR, start);
+        }
+        if (typeDescriptor == null) {
+            types.remove(typeName);
+            return null;
+        }
+        if (logger.isLoggable(Level.FINE))
+            logger.fine("caching type descriptor of type: " + typeName);
+        cachedType = new CachedType(typeDescriptor);
+        types.put(typeName, cachedType);
+        RequestMetrics.typeResolved(typeName);
+        return cachedType;
+    }
+
+    /**
+     * @return the cached type
+     * @throws TypeNotFoundException if the type is not registered in space
+     */
+    public CachedType getRequired(GigaSpace gigaSpace, String typeName) throws TypeNotFoundException {
+        CachedType cachedType = get(gigaSpace, typeName);
+        if (cachedType == null) {
+            throw new TypeNotFoundException(typeName);
+        }
+        return cachedType;
+    }
+
+    public void invalidate(GigaSpace gigaSpace, String typeName) {
+        getTypes(gigaSpace).remove(typeName);
+    }
+
+    public void clear() {
+        spaces.clear();
+    }
+
+    private ConcurrentHashMap<String, CachedType> getTypes(GigaSpace gigaSpace) {
+        String spaceName = gigaSpace.getSpace().getName();
+        ConcurrentHashMap<String, CachedType> types = spaces.get(spaceName);
+        if (types == null) {
+            ConcurrentHashMap<String, CachedType> newTypes = new ConcurrentHashMap<String, CachedType>();
+            types = spaces.putIfAbsent(spaceName, newTypes);
+            if (types == null) {
+                types = newTypes;
+            }
+        }
+        return types;
+    }
+
+    public static class CachedType {
+        private final SpaceTypeDescriptor descriptor;
+        private final Map<String, ControllerUtils.PropertyConverter> converters;
+        private final long loadTime = System.currentTimeMillis();
+
+        private CachedType(SpaceTypeDescriptor descriptor) {
+            this.descriptor = descriptor;
+            this.converters = new HashMap<String, ControllerUtils.PropertyConverter>();
+            for (int i = 0; i < descriptor.getNumOfFixedProperties(); i++) {
+                SpacePropertyDescriptor property = descriptor.getFixedProperty(i);
+                converters.put(property.getName(), ControllerUtils.getPropertyConverter(property.getType(), property.getName()));
+            }
+        }
+
+        public SpaceTypeDescriptor getDescriptor() {
+            return descriptor;
+        }
+
+        /**
+         * @return the converter of the fixed property, or null if there is no such fixed property
+         */
+        public ControllerUtils.PropertyConverter getConverter(String propertyName) {
+            return converters.get(propertyName);
+        }
+
+        public ControllerUtils.PropertyConverter getIdConverter() {
+            return converters.get(descriptor.getIdPropertyName());
+        }
+
+        /**
+         * @return the converter of the routing property, or null if the type has no fixed routing property
+         */
+        public ControllerUtils.PropertyConverter getRoutingConverter() {
+            String routingPropertyName = descriptor.getRoutingPropertyName();
+            return routingPropertyName == null ? null : converters.get(routingPropertyName);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2015 GigaSpaces Technologies Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at *
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License."
+ */
+package org.openspaces.rest.utils;
+
+import org.openspaces.rest.exceptions.RestException;
+
+/**
+ * How a POST request writes its documents to space, selected with the mode request parameter or the
+ * X-Write-Mode header.
+ *
+ * @since 12.0
+ */
+public enum WriteMode {
+    /**
+     * Wait for the space to acknowledge every chunk, the default
+     */
+    SYNC,
+    /**
+     * Send the chunks with one way writes and accept the request without waiting for the space
+     */
+    ONEWAY,
+    /**
+     * Queue the documents in the ingestion buffer, which writes them to space in large batches
+     */
+    BUFFERED;
+
+    /**
+     * @param mode the mode request parameter, or null
+     * @param header the X-Write-Mode header, or null
+     * @throws RestException if the mode is not supported
+     */
+    public static WriteMode parse(String mode, String header) {
+        String value = mode != null ? mode : header;
+        if (value == null || value.trim().length() == 0) {
+            return SYNC;
+        }
+        for (WriteMode writeMode : values()) {
+            if (writeMode.name().equalsIgnoreCase(value.trim())) {
+                return writeMode;
+            }
+        }
+        throw new RestException("Unsupported write mode [" + value + "]. Supported modes are sync, oneway and buffered");
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2015 GigaSpaces Technologies Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at *
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License."
+ */
+package org.openspaces.rest.utils;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of the documents written through the gateway without waiting for the space.
+ * <p/>
+ * One way writes are not acknowledged by the space, so a document counts as dispatched once it was sent and as
+ * failed if sending its chunk failed.
+ *
+ * @since 12.0
+ */
+public class WriteStats {
+    private final AtomicLong onewayDispatched = new AtomicLong();
+    private final AtomicLong onewayFailed = new AtomicLong();
+
+    public void onewayWritten(List<ChunkResult> chunks) {
+        for (ChunkResult chunk : chunks) {
+            if (chunk.getError() == null) {
+                onewayDispatched.addAndGet(chunk.getDocuments());
+            } else {
+                onewayFailed.addAndGet(chunk.getDocuments());
+            }
+        }
+    }
+
+    public long getOnewayDispatched() {
+        return onewayDispatched.get();
+    }
+
+    public long getOnewayFailed() {
+        return onewayFailed.get();
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> oneway = new LinkedHashMap<String, Object>();
+        oneway.put("dispatched", getOnewayDispatched());
+        oneway.put("failed", getOnewayFailed());
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+        result.put("oneway", oneway);
+        return result;
+    }
+}
@@ -0,0 +1,294 @@
+package org.openspaces.rest.tests;
+
+import org.junit.After;
+import org.junit.Test;
+import org.openspaces.rest.utils.CompressionFilter;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+public class CompressionFilterTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final CompressionFilter filter = new CompressionFilter();
+
+    @After
+    public void afterTest() {
+        CompressionFilter.setThreshold(1024);
+    }
+
+    @Test
+    public void testSmallResponseNotCompressed() throws Exception {
+        byte[] body = body(100);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request("gzip"), response, writing(body));
+
+        assertNull(response.getHeader("Content-Encoding"));
+        assertEquals("Accept-Encoding", response.getHeader("Vary"));
+        assertEquals(100, response.getContentLength());
+        assertArrayEquals(body, response.getContentAsByteArray());
+    }
+
+    @Test
+    public void testLargeResponseGzipped() throws Exception {
+        byte[] body = body(5000);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request("deflate, gzip"), response, writing(body));
+
+        assertEquals("gzip", response.getHeader("Content-Encoding"));
+        assertArrayEquals(body, read(new GZIPInputStream(new ByteArrayInputStream(response.getContentAsByteArray()))));
+    }
+
+    @Test
+    public void testLargeResponseDeflated() throws Exception {
+        byte[] body = body(5000);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request("gzip;q=0, deflate"), response, writing(body));
+
+        assertEquals("deflate", response.getHeader("Content-Encoding"));
+        assertArrayEquals(body, read(new InflaterInputStream(new ByteArrayInputStream(response.getContentAsByteArray()))));
+    }
+
+    @Test
+    public void testLargeResponseWrittenWithWriter() throws Exception {
+        final String body = new String(body(5000), UTF8);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request("gzip"), response, new FilterChain() {
+            @Override
+            public void doFilter(ServletRequest request, ServletResponse response) throws IOException {
+                response.setCharacterEncoding("UTF-8");
+                response.getWriter().write(body);
+            }
+        });
+
+        assertEquals("gzip", response.getHeader("Content-Encoding"));
+        assertEquals(body, new String(read(new GZIPInputStream(new ByteArrayInputStream(response.getContentAsByteArray()))), UTF8));
+    }
+
+    @Test
+    public void testResponseNotAccepted() throws Exception {
+        byte[] body = body(5000);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request("identity, gzip;q=0"), response, writing(body));
+
+        assertNull(response.getHeader("Content-Encoding"));
+        assertArrayEquals(body, response.getContentAsByteArray());
+    }
+
+    @Test
+    public void testCompressionDisabled() throws Exception {
+        CompressionFilter.setThreshold(-1);
+        byte[] body = body(5000);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request("gzip"), response, writing(body));
+
+        assertNull(response.getHeader("Content-Encoding"));
+        assertNull(response.getHeader("Vary"));
+        assertArrayEquals(body, response.getContentAsByteArray());
+    }
+
+    @Test
+    public void testFlushBeforeThresholdSentAsIs() throws Exception {
+        final byte[] first = body(100);
+        final byte[] rest = body(5000);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request("gzip"), response, new FilterChain() {
+            @Override
+            public void doFilter(ServletRequest request, ServletResponse response) throws IOException {
+                OutputStream out = response.getOutputStream();
+                out.write(first);
+                //a streamed body, the client gets the first part right away
+                out.flush();
+                out.write(rest);
+            }
+        });
+
+        assertNull(response.getHeader("Content-Encoding"));
+        byte[] expected = Arrays.copyOf(first, first.length + rest.length);
+        System.arraycopy(rest, 0, expected, first.length, rest.length);
+        assertArrayEquals(expected, response.getContentAsByteArray());
+    }
+
+    @Test
+    public void testAsyncResponseFinishedByAsyncDispatch() throws Exception {
+        final byte[] body = body(5000);
+        final ServletResponse[] wrapped = new ServletResponse[1];
+        MockHttpServletRequest request = request("gzip");
+        request.setAsyncSupported(true);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new FilterChain() {
+            @Override
+            public void doFilter(ServletRequest request, ServletResponse response) {
+                //the handler goes asynchronous, the result is written through the response of the async context
+                request.startAsync(request, response);
+                wrapped[0] = response;
+            }
+        });
+        assertNull(response.getHeader("Content-Encoding"));
+        assertEquals(0, response.getContentAsByteArray().length);
+
+        request.setAsyncStarted(false);
+        request.setDispatcherType(DispatcherType.ASYNC);
+        filter.doFilter(request, response, new FilterChain() {
+            @Override
+            public void doFilter(ServletRequest request, ServletResponse response) throws IOException {
+                wrapped[0].getOutputStream().write(body);
+            }
+        });
+
+        assertEquals("gzip", response.getHeader("Content-Encoding"));
+        assertArrayEquals(body, read(new GZIPInputStream(new ByteArrayInputStream(response.getContentAsByteArray()))));
+        //a later request is not taken for the async dispatch of this one
+        assertNull(request.getAttribute(CompressionFilter.class.getName() + ".response"));
+    }
+
+    @Test
+    public void testGzipRequestInflated() throws Exception {
+        byte[] body = body(5000);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        OutputStream out = new GZIPOutputStream(compressed);
+        out.write(body);
+        out.close();
+
+        MockHttpServletRequest request = request(null);
+        request.addHeader("Content-Encoding", "gzip");
+        request.setContent(compressed.toByteArray());
+        assertReadAs(body, request);
+    }
+
+    @Test
+    public void testDeflateRequestInflated() throws Exception {
+        byte[] body = body(5000);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        OutputStream out = new DeflaterOutputStream(compressed);
+        out.write(body);
+        out.close();
+
+        MockHttpServletRequest request = request(null);
+        request.addHeader("Content-Encoding", "deflate");
+        request.setContent(compressed.toByteArray());
+        assertReadAs(body, request);
+    }
+
+    @Test
+    public void testRequestEncodingInTurkishLocale() throws Exception {
+        byte[] body = body(100);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        OutputStream out = new GZIPOutputStream(compressed);
+        out.write(body);
+        out.close();
+
+        //in the turkish locale the lower case of "I" is a dotless i
+        Locale defaultLocale = Locale.getDefault();
+        Locale.setDefault(new Locale("tr", "TR"));
+        try {
+            MockHttpServletRequest request = request(null);
+            request.addHeader("Content-Encoding", "GZIP");
+            request.setContent(compressed.toByteArray());
+            assertReadAs(body, request);
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+
+    @Test
+    public void testUnsupportedRequestEncoding() throws Exception {
+        MockHttpServletRequest request = request(null);
+        request.addHeader("Content-Encoding", "br");
+        request.setContent(body(100));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        final boolean[] called = new boolean[1];
+        filter.doFilter(request, response, new FilterChain() {
+            @Override
+            public void doFilter(ServletRequest request, ServletResponse response) {
+                called[0] = true;
+            }
+        });
+
+        assertFalse(called[0]);
+        assertEquals(415, response.getStatus());
+        assertTrue(response.getErrorMessage().contains("br"));
+    }
+
+    private void assertReadAs(byte[] expected, MockHttpServletRequest request) throws IOException, ServletException {
+        final byte[][] read = new byte[1][];
+        final String[] contentEncoding = new String[1];
+        final int[] contentLength = new int[1];
+        filter.doFilter(request, new MockHttpServletResponse(), new FilterChain() {
+            @Override
+            public void doFilter(ServletRequest request, ServletResponse response) throws IOException {
+                read[0] = read(request.getInputStream());
+                contentEncoding[0] = ((HttpServletRequest) request).getHeader("Content-Encoding");
+                contentLength[0] = request.getContentLength();
+            }
+        });
+        assertArrayEquals(expected, read[0]);
+        assertNull(contentEncoding[0]);
+        assertEquals(-1, contentLength[0]);
+    }
+
+    private static MockHttpServletRequest request(String acceptEncoding) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/Product/1");
+        if (acceptEncoding != null) {
+            request.addHeader("Accept-Encoding", acceptEncoding);
+        }
+        return request;
+    }
+
+    private static FilterChain writing(final byte[] body) {
+        return new FilterChain() {
+            @Override
+            public void doFilter(ServletRequest request, ServletResponse response) throws IOException {
+                response.setContentLength(body.length);
+                response.getOutputStream().write(body);
+            }
+        };
+    }
+
+    /**
+     * @return a json like body, compressible as the responses of the gateway are
+     */
+    private static byte[] body(int length) {
+        StringBuilder body = new StringBuilder(length);
+        for (int i = 0; body.length() < length; i++) {
+            body.append("{\"CatalogNumber\":\"doc").append(i).append("\"},");
+        }
+        return body.substring(0, length).getBytes(UTF8);
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
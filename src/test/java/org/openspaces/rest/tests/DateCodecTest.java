@@ -0,0 +1,64 @@
+package org.openspaces.rest.tests;
+
+import org.junit.Test;
+import org.openspaces.rest.exceptions.RestException;
+import org.openspaces.rest.utils.DateCodec;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+
+public class DateCodecTest {
+
+    private final DateCodec codec = new DateCodec("yyyy-MM-dd HH:mm:ss");
+
+    @Test
+    public void testConfiguredFormat() throws Exception {
+        Date expected = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").parse("2015-06-30 10:15:30");
+        assertEquals(expected, codec.parse("2015-06-30 10:15:30"));
+        assertEquals("2015-06-30 10:15:30", codec.format(expected));
+    }
+
+    @Test
+    public void testEpochMillis() {
+        assertEquals(new Date(1435659330000L), codec.parse("1435659330000"));
+        assertEquals(new Date(-1L), codec.parse("-1"));
+    }
+
+    @Test
+    public void testDigitsOnlyFormat() throws Exception {
+        DateCodec digits = new DateCodec("yyyyMMddHHmmss");
+        Date expected = new SimpleDateFormat("yyyyMMddHHmmss").parse("20150630101530");
+        assertEquals(expected, digits.parse("20150630101530"));
+        assertEquals(new Date(1435659330000L), digits.parse("1435659330000"));
+        assertEquals(new Date(1200101010101L), digits.parse("1200101010101"));
+    }
+
+    @Test
+    public void testIso8601() throws Exception {
+        assertEquals(new Date(1435659330000L), codec.parse("2015-06-30T10:15:30Z"));
+        assertEquals(new Date(1435659330250L), codec.parse("2015-06-30T10:15:30.25Z"));
+        assertEquals(new Date(1435652130000L), codec.parse("2015-06-30T10:15:30+02:00"));
+        assertEquals(new Date(1435639500000L), codec.parse("2015-06-30T10:15+0530"));
+        assertEquals(new Date(-1L), codec.parse("1969-12-31T23:59:59.999Z"));
+
+        //without an offset the date is in the default time zone, like the configured format
+        assertEquals(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").parse("2015-06-30 10:15:30"), codec.parse("2015-06-30T10:15:30"));
+        assertEquals(new SimpleDateFormat("yyyy-MM-dd").parse("2015-06-30"), codec.parse("2015-06-30"));
+    }
+
+    @Test
+    public void testIllegalDates() {
+        for (String value : new String[]{"abc", "2015-02-30", "2015-06-30T25:00", "2015-06-30T10:15:30X", "2015-06-30 10:15:30 and more"}) {
+            try {
+                codec.parse(value);
+                fail("Parsing [" + value + "] should fail");
+            } catch (RestException e) {
+                //This is the right behavior
+            }
+        }
+    }
+}
@@ -1,8 +1,9 @@
 package org.openspaces.rest.tests;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import com.gigaspaces.annotation.pojo.FifoSupport;
+import com.gigaspaces.client.WriteModifiers;
 import com.gigaspaces.document.SpaceDocument;
 import com.gigaspaces.metadata.SpaceDocumentSupport;
 import com.gigaspaces.metadata.SpaceTypeDescriptor;
@@ -12,28 +13,66 @@ import com.gigaspaces.metadata.index.SpaceIndexType;
 import com.gigaspaces.query.IdQuery;
 import com.gigaspaces.query.QueryResultType;
 import junit.framework.Assert;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.openspaces.core.GigaSpace;
 import org.openspaces.core.GigaSpaceConfigurer;
 import org.openspaces.core.space.UrlSpaceConfigurer;
+import org.openspaces.rest.exceptions.CursorMismatchException;
 import org.openspaces.rest.exceptions.ObjectNotFoundException;
+import org.openspaces.rest.exceptions.PartialWriteException;
+import org.openspaces.rest.exceptions.PayloadTooLargeException;
+import org.openspaces.rest.exceptions.RestException;
+import org.openspaces.rest.exceptions.ServerBusyException;
+import org.openspaces.rest.exceptions.SpaceNotFoundException;
 import org.openspaces.rest.exceptions.TypeNotFoundException;
 import org.openspaces.rest.space.SpaceAPIController;
+import org.openspaces.rest.utils.ChunkResult;
 import org.openspaces.rest.utils.ControllerUtils;
-import org.springframework.web.HttpMediaTypeNotAcceptableException;
-import org.springframework.web.bind.MissingServletRequestParameterException;
-import org.springframework.web.servlet.mvc.multiaction.NoSuchRequestHandlingMethodException;
-
+import org.openspaces.rest.utils.NdjsonHttpMessageConverter;
+import org.openspaces.rest.utils.RequestMetrics;
+import org.openspaces.rest.utils.SmileHttpMessageConverter;
+import org.openspaces.rest.utils.SpaceSelectionFilter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.async.StandardServletAsyncWebRequest;
+import org.springframework.web.context.request.async.WebAsyncManager;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
 import java.net.InetAddress;
-import java.text.SimpleDateFormat;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 
@@ -42,8 +81,10 @@ public class SpaceAPIControllerTest {
     public static enum Job{WORKER, DOCTOR, FARMER}
     
     private static final String SPACENAME = "embeddedTestSpace";
+    private static final String OTHER_SPACENAME = "embeddedOtherTestSpace";
     private static SpaceAPIController spaceAPIController;
     private static GigaSpace gigaSpace;
+    private static GigaSpace otherGigaSpace;
     private static String locators;
     private static String groups;
     static {
@@ -62,26 +103,33 @@ public class SpaceAPIControllerTest {
         ControllerUtils.spaceName = SPACENAME;
         ControllerUtils.lookupGroups = groups;
 
-        ControllerUtils.date_format = "yyyy-MM-dd HH:mm:ss";
-        ControllerUtils.simpleDateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-        ControllerUtils.mapper = new ObjectMapper();
-        ControllerUtils.mapper.setDateFormat(ControllerUtils.simpleDateFormat);
-        ControllerUtils.mapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
+        ControllerUtils.configureDateFormat("yyyy-MM-dd HH:mm:ss");
 
         gigaSpace = new GigaSpaceConfigurer(new UrlSpaceConfigurer("/./" + SPACENAME+"?groups="+groups)).gigaSpace();
         registerProductType(gigaSpace);
+
+        //a second space, selected per request
+        spaceAPIController.setSpaces(OTHER_SPACENAME);
+        otherGigaSpace = new GigaSpaceConfigurer(new UrlSpaceConfigurer("/./" + OTHER_SPACENAME+"?groups="+groups)).gigaSpace();
+        registerProductType(otherGigaSpace);
     }
     
     @Before
     public void beforeTest(){
         gigaSpace.clear(null);
+        otherGigaSpace.clear(null);
+    }
+
+    @After
+    public void afterTest(){
+        RequestContextHolder.resetRequestAttributes();
     }
 
     @Test
     public void testInroduceType() throws Exception {
         String content = "[{\"CatalogNumber\":\"doc1\", \"Category\":\"Hardware\", \"Name\":\"Anvil1\", \"nested\": {\"nestedVar1\":\"nestedValue1\"}}, {\"CatalogNumber\":\"doc2\", \"Category\":\"Hardware\", \"Name\":\"Anvil2\"}]";
         try {
-            Map<String, Object> postResult = spaceAPIController.post("MyType", content);
+            Map<String, Object> postResult = call(spaceAPIController.post("MyType", null, null, body(content))).getBody();
             fail("Writing to the space without introducing the class should cause TypeNotFoundException and it didn't");
         } catch (TypeNotFoundException e) {
             //This is the right behavior
@@ -90,7 +138,7 @@ public class SpaceAPIControllerTest {
         assertEquals("success", introduceTypeResult.get("status"));
 
         try {
-            Map<String, Object> postResult = spaceAPIController.post("MyType", content);
+            Map<String, Object> postResult = call(spaceAPIController.post("MyType", null, null, body(content))).getBody();
             assertEquals("Excpecting to get status equals to success", "success", postResult.get("status"));
             // More tests for write are in testGet()
         } catch (TypeNotFoundException e) {
@@ -98,6 +146,25 @@ public class SpaceAPIControllerTest {
         }
     }
 
+    @Test
+    public void testGetByIdAfterIntroduceType() throws Exception {
+        try {
+            call(spaceAPIController.getById("MyLaterType", "1", null, null));
+            fail("Reading a type which was not introduced should cause TypeNotFoundException and it didn't");
+        } catch (TypeNotFoundException e) {
+            //This is the right behavior
+        }
+        assertEquals("success", spaceAPIController.introduceType("MyLaterType", "id").get("status"));
+
+        //the type which was not found is not cached
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put("id", "1");
+        properties.put("Name", "Later");
+        gigaSpace.write(new SpaceDocument("MyLaterType", properties));
+        Map<String, Object> result = toMap(call(spaceAPIController.getById("MyLaterType", "1", null, null)));
+        assertEquals("Later", ((Map<String, Object>) ((Map<String, Object>) result.get("data")).get("properties")).get("Name"));
+    }
+
     @Test
     public void testAdvancedIntroduceType() throws Exception {
         String json = "{\n" +
@@ -202,13 +269,13 @@ public class SpaceAPIControllerTest {
         gigaSpace.write(document2);
 
         //test get by type
-        Map<String, Object> result = spaceAPIController.getByQuery("Product", "", Integer.MAX_VALUE);
+        Map<String, Object> result = toMap(call(spaceAPIController.getByQuery("Product", "", Integer.MAX_VALUE, null, null, null)));
         assertEquals("success", result.get("status"));
         ArrayList<Map<String, Map<String, Object>>> resultData = (ArrayList<Map<String, Map<String, Object>>>) result.get("data");
         assertEquals(2, resultData.size());
 
         //test get by var1
-        result = spaceAPIController.getByQuery("Product", "testvar1='value1'", Integer.MAX_VALUE);
+        result = toMap(call(spaceAPIController.getByQuery("Product", "testvar1='value1'", Integer.MAX_VALUE, null, null, null)));
         assertEquals("success", result.get("status"));
         resultData = (ArrayList<Map<String, Map<String, Object>>>) result.get("data");
 
@@ -216,28 +283,28 @@ public class SpaceAPIControllerTest {
         compareObjects(properties1, resultData.get(0).get("properties"));
 
         //null size limit
-        result = spaceAPIController.getByQuery("Product", "testvar1='value1'", null);
+        result = toMap(call(spaceAPIController.getByQuery("Product", "testvar1='value1'", null, null, null, null)));
         assertEquals("success", result.get("status"));
         resultData = (ArrayList<Map<String, Map<String, Object>>>) result.get("data");
         assertEquals(1, resultData.size());
         compareObjects(properties1, resultData.get(0).get("properties"));
 
         //1 size limit
-        result = spaceAPIController.getByQuery("Product", "testvar1='value1'", 1);
+        result = toMap(call(spaceAPIController.getByQuery("Product", "testvar1='value1'", 1, null, null, null)));
         assertEquals("success", result.get("status"));
         resultData = (ArrayList<Map<String, Map<String, Object>>>) result.get("data");
         assertEquals(1, resultData.size());
         compareObjects(properties1, resultData.get(0).get("properties"));
 
         //test get by var2
-        result = spaceAPIController.getByQuery("Product", "testvar2='value2'", Integer.MAX_VALUE);
+        result = toMap(call(spaceAPIController.getByQuery("Product", "testvar2='value2'", Integer.MAX_VALUE, null, null, null)));
         assertEquals("success", result.get("status"));
         resultData = (ArrayList<Map<String, Map<String, Object>>>) result.get("data");
         assertEquals(1, resultData.size());
         compareObjects(properties2, resultData.get(0).get("properties"));
 
         //test nested
-        result = spaceAPIController.getByQuery("Product", "nested.nestedVar1='nestedValue1'", Integer.MAX_VALUE);
+        result = toMap(call(spaceAPIController.getByQuery("Product", "nested.nestedVar1='nestedValue1'", Integer.MAX_VALUE, null, null, null)));
         assertEquals("success", result.get("status"));
         resultData = (ArrayList<Map<String, Map<String, Object>>>) result.get("data");
         assertEquals(1, resultData.size());
@@ -250,17 +317,17 @@ public class SpaceAPIControllerTest {
         gigaSpace.write(pojo1);
 
         String pojoClassName = Pojo.class.getName();
-        result = spaceAPIController.getByQuery(pojoClassName, "id='1'", Integer.MAX_VALUE);
+        result = toMap(call(spaceAPIController.getByQuery(pojoClassName, "id='1'", Integer.MAX_VALUE, null, null, null)));
         assertEquals("success", result.get("status"));
         ArrayList<Map<String, Object>> resultDataPojo = (ArrayList<Map<String, Object>>) result.get("data");
         compareObjects(pojo1, resultDataPojo.get(0));
 
-        Map<String, Object> resultByID = spaceAPIController.getById(pojoClassName, "1");
+        Map<String, Object> resultByID = call(spaceAPIController.getById(pojoClassName, "1", null, null));
         assertEquals("success", resultByID.get("status"));
         Map<String, Object> resultDataById = (Map<String, Object>) resultByID.get("data");
         compareObjects(pojo1, resultDataById);
 
-        resultByID = spaceAPIController.getById("Product", "doc1");
+        resultByID = call(spaceAPIController.getById("Product", "doc1", null, null));
         assertEquals("success", resultByID.get("status"));
         resultDataById = (Map<String, Object>) resultByID.get("data");
         compareObjects(properties1, (Map<String, Object>) resultDataById.get("properties"));
@@ -270,7 +337,7 @@ public class SpaceAPIControllerTest {
         pojo2.setVal(123L);
         gigaSpace.write(pojo2);
 
-        resultByID = spaceAPIController.getById(Pojo2.class.getName(), "1");
+        resultByID = call(spaceAPIController.getById(Pojo2.class.getName(), "1", null, null));
         assertEquals("success", resultByID.get("status"));
         resultDataById = (Map<String, Object>) resultByID.get("data");
         compareObjects(pojo2, resultDataById);
@@ -280,12 +347,158 @@ public class SpaceAPIControllerTest {
         pojo3.setVal(123L);
         gigaSpace.write(pojo3);
 
-        resultByID = spaceAPIController.getById(Pojo3.class.getName(), "1");
+        resultByID = call(spaceAPIController.getById(Pojo3.class.getName(), "1", null, null));
         assertEquals("success", resultByID.get("status"));
         resultDataById = (Map<String, Object>) resultByID.get("data");
         compareObjects(pojo3, resultDataById);
     }
 
+    @Test
+    public void testGetWithCursor() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            Map<String, Object> properties = new HashMap<String, Object>();
+            properties.put("CatalogNumber", "doc" + i);
+            properties.put("Category", "Hardware");
+            gigaSpace.write(new SpaceDocument("Product", properties));
+        }
+
+        Map<String, Object> result = toMap(call(spaceAPIController.getByQuery("Product", "", 2, "*", null, null)));
+        assertEquals("success", result.get("status"));
+        assertEquals(2, ((ArrayList) result.get("data")).size());
+        String cursor = (String) result.get("cursor");
+        Assert.assertNotNull(cursor);
+
+        result = toMap(call(spaceAPIController.getByQuery("Product", null, 2, cursor, null, null)));
+        assertEquals(2, ((ArrayList) result.get("data")).size());
+        assertEquals(cursor, result.get("cursor"));
+
+        result = toMap(call(spaceAPIController.getByQuery("Product", null, 2, cursor, null, null)));
+        assertEquals(1, ((ArrayList) result.get("data")).size());
+        Assert.assertNull(result.get("cursor"));
+
+        try {
+            call(spaceAPIController.getByQuery("Product", null, 2, cursor, null, null));
+            fail("A cursor that was read to the end should be closed");
+        } catch (ObjectNotFoundException e) {
+            //This is the right behavior
+        }
+    }
+
+    @Test
+    public void testGetWithCursorOfAnotherQuery() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            Map<String, Object> properties = new HashMap<String, Object>();
+            properties.put("CatalogNumber", "doc" + i);
+            properties.put("Category", "Hardware");
+            gigaSpace.write(new SpaceDocument("Product", properties));
+        }
+        String cursor = (String) toMap(call(spaceAPIController.getByQuery("Product", "Category = 'Hardware'", 2, "*", null, null))).get("cursor");
+        Assert.assertNotNull(cursor);
+
+        try {
+            call(spaceAPIController.getByQuery("Product", "Category = 'Hardware'", 2, cursor, "Name", null));
+            fail("A cursor should not be resumed with other fields");
+        } catch (CursorMismatchException e) {
+            //This is the right behavior
+        }
+        try {
+            call(spaceAPIController.getByQuery("Product", "", 2, cursor, null, null));
+            fail("A cursor should not be resumed with another query");
+        } catch (CursorMismatchException e) {
+            //This is the right behavior
+        }
+        try {
+            call(spaceAPIController.getByQuery("Person", "Category = 'Hardware'", 2, cursor, null, null));
+            fail("A cursor should not be resumed with another type");
+        } catch (CursorMismatchException e) {
+            //This is the right behavior
+        }
+        try {
+            call(spaceAPIController.getByQuery("Product", "Category = 'Hardware'", 2, cursor, null, "Hardware"));
+            fail("A cursor should not be resumed with another routing");
+        } catch (CursorMismatchException e) {
+            //This is the right behavior
+        }
+        selectSpace(OTHER_SPACENAME);
+        try {
+            call(spaceAPIController.getByQuery("Product", "Category = 'Hardware'", 2, cursor, null, null));
+            fail("A cursor should not be resumed in another space");
+        } catch (CursorMismatchException e) {
+            //This is the right behavior
+        }
+        RequestContextHolder.resetRequestAttributes();
+
+        //the rejected requests leave the cursor open, the query may differ in whitespace
+        Map<String, Object> result = toMap(call(spaceAPIController.getByQuery("Product", "Category  =  'Hardware'", 2, cursor, null, null)));
+        assertEquals(2, ((ArrayList) result.get("data")).size());
+        assertEquals(cursor, result.get("cursor"));
+    }
+
+    @Test
+    public void testGetFromSelectedSpace() throws Exception {
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put("CatalogNumber", "doc1");
+        properties.put("Name", "Other");
+        otherGigaSpace.write(new SpaceDocument("Product", properties));
+
+        //the document was written to another space
+        Map<String, Object> result = toMap(call(spaceAPIController.getById("Product", "doc1", null, null)));
+        assertTrue(((Map<String, Object>) result.get("data")).isEmpty());
+
+        selectSpace(OTHER_SPACENAME);
+        result = toMap(call(spaceAPIController.getById("Product", "doc1", null, null)));
+        assertEquals("success", result.get("status"));
+        Map<String, Object> data = (Map<String, Object>) result.get("data");
+        assertEquals("Other", ((Map<String, Object>) data.get("properties")).get("Name"));
+    }
+
+    @Test(expected=SpaceNotFoundException.class)
+    public void testGetFromUnknownSpace() throws Exception {
+        selectSpace("IDontExist");
+        call(spaceAPIController.getById("Product", "doc1", null, null));
+    }
+
+    @Test
+    public void testGetWithProjection() throws Exception {
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put("CatalogNumber", "doc1");
+        properties.put("Category", "Hardware");
+        properties.put("Name", "Anvil1");
+        properties.put("Price", 9.99d);
+        gigaSpace.write(new SpaceDocument("Product", properties));
+
+        Map<String, Object> expected = new HashMap<String, Object>();
+        expected.put("Name", "Anvil1");
+        expected.put("Price", 9.99d);
+
+        Map<String, Object> result = toMap(call(spaceAPIController.getByQuery("Product", "", null, null, "Name, Price", null)));
+        ArrayList<Map<String, Map<String, Object>>> resultData = (ArrayList<Map<String, Map<String, Object>>>) result.get("data");
+        assertEquals(1, resultData.size());
+        compareObjects(expected, resultData.get(0).get("properties"));
+
+        Map<String, Object> resultById = call(spaceAPIController.getById("Product", "doc1", "Name,Price", null));
+        compareObjects(expected, ((Map<String, Object>) resultById.get("data")).get("properties"));
+    }
+
+    @Test
+    public void testGetByIds() throws Exception {
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put("CatalogNumber", "doc1");
+        properties.put("Category", "Hardware");
+        gigaSpace.write(new SpaceDocument("Product", properties));
+
+        Map<String, Object> result = toMap(call(spaceAPIController.getByIds("Product", "[\"doc2\", \"doc1\"]", null)));
+        assertEquals("success", result.get("status"));
+        ArrayList<Map<String, Object>> resultData = (ArrayList<Map<String, Object>>) result.get("data");
+        assertEquals(2, resultData.size());
+        assertEquals("doc2", resultData.get(0).get("id"));
+        assertEquals(false, resultData.get(0).get("found"));
+        Assert.assertNull(resultData.get(0).get("document"));
+        assertEquals("doc1", resultData.get(1).get("id"));
+        assertEquals(true, resultData.get(1).get("found"));
+        compareObjects(properties, ((Map<String, Object>) resultData.get(1).get("document")).get("properties"));
+    }
+
     @Test
     public void testDelete() throws Exception {
         
@@ -316,7 +529,7 @@ public class SpaceAPIControllerTest {
         assertEquals(3, gigaSpace.count(null));
 
         //test delete by type
-        Map<String, Object> result = spaceAPIController.deleteByQuery("Product", "", Integer.MAX_VALUE);
+        Map<String, Object> result = toMap(call(spaceAPIController.deleteByQuery("Product", "", Integer.MAX_VALUE, null, null, null, null)));
         assertEquals("success", result.get("status"));
         ArrayList<Map<String, Map<String, Object>>> resultData = (ArrayList<Map<String, Map<String, Object>>>) result.get("data");
         assertEquals(3, resultData.size());
@@ -330,21 +543,21 @@ public class SpaceAPIControllerTest {
         assertEquals(3, gigaSpace.count(null));
         
         //test simple delete
-        result = spaceAPIController.deleteByQuery("Product", "Name='Anvil1'", Integer.MAX_VALUE);
+        result = toMap(call(spaceAPIController.deleteByQuery("Product", "Name='Anvil1'", Integer.MAX_VALUE, null, null, null, null)));
         assertEquals("success", result.get("status"));
         resultData = (ArrayList<Map<String, Map<String, Object>>>) result.get("data");
         compareObjects(properties1, resultData.get(0).get("properties"));
         assertEquals(2, gigaSpace.count(null));
 
         //test nested delete
-        result = spaceAPIController.deleteByQuery("Product", "nested.nestedVar1='nestedValue1'", Integer.MAX_VALUE);
+        result = toMap(call(spaceAPIController.deleteByQuery("Product", "nested.nestedVar1='nestedValue1'", Integer.MAX_VALUE, null, null, null, null)));
         assertEquals("success", result.get("status"));
         resultData = (ArrayList<Map<String, Map<String, Object>>>) result.get("data");
         compareObjects(properties2, resultData.get(0).get("properties"));
         assertEquals(1, gigaSpace.count(null));
 
         //test id-based delete
-        Map<String, Object> resultById = spaceAPIController.deleteById("Product", "doc3");
+        Map<String, Object> resultById = call(spaceAPIController.deleteById("Product", "doc3", null));
         assertEquals("success", result.get("status"));
         Map<String, Map<String, Object>> resultDataById = (Map<String, Map<String, Object>>) resultById.get("data");
         compareObjects(properties3, resultDataById.get("properties"));
@@ -357,7 +570,7 @@ public class SpaceAPIControllerTest {
         assertEquals(1, gigaSpace.count(null));
 
         //test delete pojo by id
-        resultById = spaceAPIController.deleteById(Pojo.class.getName(), "1");
+        resultById = call(spaceAPIController.deleteById(Pojo.class.getName(), "1", null));
         assertEquals("success", resultById.get("status"));
         Map<String, Object> resultDataByIdPojo = (Map<String, Object>) resultById.get("data");
         compareObjects(pojo1, resultDataByIdPojo);
@@ -365,7 +578,7 @@ public class SpaceAPIControllerTest {
 
         gigaSpace.write(pojo1);
 
-        result = spaceAPIController.deleteByQuery(Pojo.class.getName(), "id='1'", Integer.MAX_VALUE);
+        result = toMap(call(spaceAPIController.deleteByQuery(Pojo.class.getName(), "id='1'", Integer.MAX_VALUE, null, null, null, null)));
         assertEquals("success", result.get("status"));
         ArrayList<Map<String, Object>> resultDataPojos = (ArrayList<Map<String, Object>>) result.get("data");
         compareObjects(pojo1, resultDataPojos.get(0));
@@ -377,7 +590,7 @@ public class SpaceAPIControllerTest {
         pojo2.setVal(123L);
         gigaSpace.write(pojo2);
 
-        resultById = spaceAPIController.deleteById(Pojo2.class.getName(), "1");
+        resultById = call(spaceAPIController.deleteById(Pojo2.class.getName(), "1", null));
         assertEquals("success", resultById.get("status"));
         assertEquals(0, gigaSpace.count(new Pojo2()));
 
@@ -386,11 +599,378 @@ public class SpaceAPIControllerTest {
         pojo3.setVal(123L);
         gigaSpace.write(pojo3);
 
-        resultById = spaceAPIController.deleteById(Pojo3.class.getName(), "1");
+        resultById = call(spaceAPIController.deleteById(Pojo3.class.getName(), "1", null));
         assertEquals("success", resultById.get("status"));
         assertEquals(0, gigaSpace.count(new Pojo2()));
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testDeleteWithoutData() throws Exception {
+        String content = "[{\"CatalogNumber\":\"doc1\", \"Category\":\"Hardware\"}, {\"CatalogNumber\":\"doc2\", \"Category\":\"Hardware\"}, {\"CatalogNumber\":\"doc3\", \"Category\":\"Tools\"}]";
+        call(spaceAPIController.post("Product", null, null, body(content)));
+
+        Map<String, Object> result = toMap(call(spaceAPIController.deleteByQuery("Product", "Category='Tools'", null, null, false, null, null)));
+        assertEquals("success", result.get("status"));
+        assertEquals(1, ((Map<String, Object>) result.get("data")).get("deleted"));
+        assertEquals(2, gigaSpace.count(null));
+
+        //with max the entries are taken and dropped
+        result = toMap(call(spaceAPIController.deleteByQuery("Product", "", 1, null, false, null, null)));
+        assertEquals(1, ((Map<String, Object>) result.get("data")).get("deleted"));
+        assertEquals(1, gigaSpace.count(null));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testDeleteInBatches() throws Exception {
+        StringBuilder content = new StringBuilder("[");
+        for (int i = 0; i < 5; i++) {
+            if (i > 0) {
+                content.append(",");
+            }
+            content.append("{\"CatalogNumber\":\"doc").append(i).append("\", \"Category\":\"Hardware\"}");
+        }
+        content.append("]");
+        call(spaceAPIController.post("Product", null, null, body(content.toString())));
+
+        Map<String, Object> result = toMap(call(spaceAPIController.deleteByQuery("Product", "", 4, null, null, 3, null)));
+        assertEquals("success", result.get("status"));
+        assertEquals(4, ((ArrayList<Object>) result.get("data")).size());
+        assertEquals(1, gigaSpace.count(null));
+
+        result = toMap(call(spaceAPIController.deleteByQuery("Product", "", null, null, null, 3, null)));
+        assertEquals(1, ((ArrayList<Object>) result.get("data")).size());
+        assertEquals(0, gigaSpace.count(null));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testAggregate() throws Exception {
+        String content = "[{\"CatalogNumber\":\"doc1\", \"Category\":\"Hardware\", \"Price\":10.5}, {\"CatalogNumber\":\"doc2\", \"Category\":\"Hardware\", \"Price\":20.0}, {\"CatalogNumber\":\"doc3\", \"Category\":\"Tools\", \"Price\":22.0}]";
+        call(spaceAPIController.post("Product", null, null, body(content)));
+
+        Map<String, Object> result = call(spaceAPIController.aggregate("Product", null, "count, sum(Price), min(Price), max(Price)", null));
+        assertEquals("success", result.get("status"));
+        Map<String, Object> data = (Map<String, Object>) result.get("data");
+        assertEquals(3L, ((Number) data.get("count")).longValue());
+        assertEquals(52.5, ((Number) data.get("sum(Price)")).doubleValue(), 0.0001);
+        assertEquals(10.5, ((Number) data.get("min(Price)")).doubleValue(), 0.0001);
+        assertEquals(22.0, ((Number) data.get("max(Price)")).doubleValue(), 0.0001);
+
+        result = call(spaceAPIController.aggregate("Product", "Price > 15", null, null));
+        assertEquals(2L, ((Number) ((Map<String, Object>) result.get("data")).get("count")).longValue());
+
+        result = call(spaceAPIController.aggregate("Product", "", "count,avg(Price)", "Category"));
+        List<Map<String, Object>> groups = (List<Map<String, Object>>) result.get("data");
+        assertEquals(2, groups.size());
+        for (Map<String, Object> group : groups) {
+            Object category = ((Map<String, Object>) group.get("group")).get("Category");
+            if ("Hardware".equals(category)) {
+                assertEquals(2L, ((Number) group.get("count")).longValue());
+                assertEquals(15.25, ((Number) group.get("avg(Price)")).doubleValue(), 0.0001);
+            } else {
+                assertEquals("Tools", category);
+                assertEquals(1L, ((Number) group.get("count")).longValue());
+            }
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testAggregateUpperCaseInTurkishLocale() throws Exception {
+        String content = "[{\"CatalogNumber\":\"doc1\", \"Category\":\"Hardware\", \"Price\":10.5}, {\"CatalogNumber\":\"doc2\", \"Category\":\"Hardware\", \"Price\":20.0}]";
+        call(spaceAPIController.post("Product", null, null, body(content)));
+
+        //the lower case of "MIN" is "m\u0131n" in the turkish locale
+        Locale defaultLocale = Locale.getDefault();
+        Locale.setDefault(new Locale("tr", "TR"));
+        try {
+            Map<String, Object> data = (Map<String, Object>) call(spaceAPIController.aggregate("Product", null, "COUNT, MIN(Price)", null)).get("data");
+            assertEquals(2L, ((Number) data.get("COUNT")).longValue());
+            assertEquals(10.5, ((Number) data.get("MIN(Price)")).doubleValue(), 0.0001);
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+
+    @Test(expected = RestException.class)
+    public void testAggregateUnsupported() throws Exception {
+        call(spaceAPIController.aggregate("Product", null, "median(Price)", null));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCountWithQuery() throws Exception {
+        String content = "[{\"CatalogNumber\":\"doc1\", \"Category\":\"Hardware\"}, {\"CatalogNumber\":\"doc2\", \"Category\":\"Hardware\"}, {\"CatalogNumber\":\"doc3\", \"Category\":\"Tools\"}]";
+        call(spaceAPIController.post("Product", null, null, body(content)));
+
+        assertEquals(2, call(spaceAPIController.count("Product", "Category = 'Hardware'", null)).get("data"));
+        assertEquals(3, call(spaceAPIController.count("Product", null, false)).get("data"));
+
+        Map<String, Object> data = (Map<String, Object>) call(spaceAPIController.count("Product", "Category = 'Tools'", true)).get("data");
+        assertEquals(1, data.get("count"));
+        List<Map<String, Object>> partitions = (List<Map<String, Object>>) data.get("partitions");
+        //the embedded test space is not partitioned
+        assertEquals(1, partitions.size());
+        assertEquals(0, partitions.get(0).get("partition"));
+        assertEquals(1, partitions.get(0).get("count"));
+    }
+
+    @Test
+    public void testGetAsNdjson() throws Exception {
+        String content = "[{\"CatalogNumber\":\"doc1\", \"Category\":\"Hardware\"}, {\"CatalogNumber\":\"doc2\", \"Category\":\"Hardware\"}, {\"CatalogNumber\":\"doc3\", \"Category\":\"Tools\"}]";
+        call(spaceAPIController.post("Product", null, null, body(content)));
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final HttpHeaders headers = new HttpHeaders();
+        HttpOutputMessage outputMessage = new HttpOutputMessage() {
+            public OutputStream getBody() {
+                return out;
+            }
+
+            public HttpHeaders getHeaders() {
+                return headers;
+            }
+        };
+        new NdjsonHttpMessageConverter().write(call(spaceAPIController.getByQuery("Product", "", 2, "*", null, null)),
+                MediaType.parseMediaType(NdjsonHttpMessageConverter.APPLICATION_NDJSON_VALUE), outputMessage);
+
+        String[] lines = out.toString("UTF-8").split("\n");
+        assertEquals(2, lines.length);
+        for (String line : lines) {
+            Map<String, Object> document = ControllerUtils.mapper.readValue(line, LinkedHashMap.class);
+            assertEquals("Product", document.get("typeName"));
+        }
+        assertNotNull(headers.getFirst(NdjsonHttpMessageConverter.CURSOR_HEADER));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSmile() throws Exception {
+        ObjectMapper smileMapper = new ObjectMapper(new SmileFactory());
+        List<Map<String, Object>> documents = new ArrayList<Map<String, Object>>();
+        for (int i = 1; i <= 2; i++) {
+            Map<String, Object> document = new LinkedHashMap<String, Object>();
+            document.put("CatalogNumber", "doc" + i);
+            document.put("Category", "Hardware");
+            documents.add(document);
+        }
+        Map<String, Object> result = call(spaceAPIController.post("Product", null, null,
+                new ByteArrayInputStream(smileMapper.writeValueAsBytes(documents)))).getBody();
+        assertEquals("success", result.get("status"));
+        assertEquals(2, gigaSpace.count(null));
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final HttpHeaders headers = new HttpHeaders();
+        HttpOutputMessage outputMessage = new HttpOutputMessage() {
+            public OutputStream getBody() {
+                return out;
+            }
+
+            public HttpHeaders getHeaders() {
+                return headers;
+            }
+        };
+        new SmileHttpMessageConverter().write(call(spaceAPIController.getByQuery("Product", "", null, null, null, null)),
+                MediaType.parseMediaType(SmileHttpMessageConverter.APPLICATION_SMILE_VALUE), outputMessage);
+        Map<String, Object> response = smileMapper.readValue(out.toByteArray(), LinkedHashMap.class);
+        assertEquals("success", response.get("status"));
+        assertEquals(2, ((List<Object>) response.get("data")).size());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testAsync() throws Exception {
+        call(spaceAPIController.post("Product", null, null, body("{\"CatalogNumber\":\"doc1\", \"Name\":\"Anvil1\"}")));
+
+        WebAsyncTask<Map<String, Object>> task = spaceAPIController.getById("Product", "doc1", "Name", null);
+        assertEquals(Long.valueOf(ControllerUtils.asyncTimeout), task.getTimeout());
+        //the space was resolved by the handler, the space call does not depend on the request thread
+        Map<String, Object> result = ControllerUtils.pointPool.getExecutor().submit(task.getCallable()).get();
+        assertEquals("Anvil1", ((Map<String, Object>) ((Map<String, Object>) result.get("data")).get("properties")).get("Name"));
+    }
+
+    @Test
+    public void testAsyncPoolFull() throws Exception {
+        call(spaceAPIController.post("Product", null, null, body("{\"CatalogNumber\":\"doc1\", \"Name\":\"Anvil1\"}")));
+        spaceAPIController.setAsyncPointPoolSize(1);
+        spaceAPIController.setAsyncPointQueueCapacity(0);
+        try {
+            WebAsyncTask<Map<String, Object>> first = spaceAPIController.getById("Product", "doc1", null, null);
+            try {
+                spaceAPIController.getById("Product", "doc1", null, null);
+                fail("Should throw ServerBusyException");
+            } catch (ServerBusyException e) {
+                //This is the right behavior
+            }
+            //queries run on their own pool
+            call(spaceAPIController.getByQuery("Product", "", null, null, null, null));
+
+            //once the call returned its place is free again
+            call(first);
+            call(spaceAPIController.getById("Product", "doc1", null, null));
+        } finally {
+            spaceAPIController.setAsyncPointPoolSize(32);
+            spaceAPIController.setAsyncPointQueueCapacity(1000);
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testResponseCache() throws Exception {
+        spaceAPIController.setResponseCacheSize(100);
+        try {
+            call(spaceAPIController.post("Product", null, null, body("{\"CatalogNumber\":\"doc1\", \"Name\":\"Anvil1\"}")));
+            assertEquals("Anvil1", readName("doc1"));
+            assertEquals(1, ((List<Object>) toMap(call(spaceAPIController.getByQuery("Product", "Name = 'Anvil1'", null, null, null, null))).get("data")).size());
+            long hits = (Long) ((Map<String, Object>) ((Map<String, Object>) spaceAPIController.stats().get("data")).get("cache")).get("hits");
+
+            //written without the gateway, the cached responses are served until they expire
+            Map<String, Object> properties = new HashMap<String, Object>();
+            properties.put("CatalogNumber", "doc1");
+            properties.put("Name", "Anvil2");
+            gigaSpace.write(new SpaceDocument("Product", properties), WriteModifiers.UPDATE_OR_WRITE);
+            assertEquals("Anvil1", readName("doc1"));
+            assertEquals(1, ((List<Object>) toMap(call(spaceAPIController.getByQuery("Product", "Name  =  'Anvil1' ", null, null, null, null))).get("data")).size());
+            assertEquals(hits + 2, ((Map<String, Object>) ((Map<String, Object>) spaceAPIController.stats().get("data")).get("cache")).get("hits"));
+
+            //written through the gateway, the cached responses of the type are dropped
+            call(spaceAPIController.post("Product", null, null, body("{\"CatalogNumber\":\"doc1\", \"Name\":\"Anvil3\"}")));
+            assertEquals("Anvil3", readName("doc1"));
+            assertEquals(0, ((List<Object>) toMap(call(spaceAPIController.getByQuery("Product", "Name = 'Anvil1'", null, null, null, null))).get("data")).size());
+        } finally {
+            spaceAPIController.setResponseCacheSize(0);
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRouting() throws Exception {
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put("CatalogNumber", "doc1");
+        properties.put("Category", "Hardware");
+        properties.put("Name", "Anvil1");
+        gigaSpace.write(new SpaceDocument("Product", properties));
+        properties.put("CatalogNumber", "doc2");
+        properties.put("Category", "Tools");
+        gigaSpace.write(new SpaceDocument("Product", properties));
+
+        List<Map<String, Object>> data = (List<Map<String, Object>>) toMap(call(spaceAPIController.getByQuery("Product", "Category = 'Hardware'", null, null, null, "Hardware"))).get("data");
+        assertEquals(1, data.size());
+        assertEquals("doc1", ((Map<String, Object>) data.get(0).get("properties")).get("CatalogNumber"));
+
+        Map<String, Object> result = call(spaceAPIController.getById("Product", "doc2", null, "Tools"));
+        assertEquals("Tools", ((Map<String, Object>) ((Map<String, Object>) result.get("data")).get("properties")).get("Category"));
+
+        result = toMap(call(spaceAPIController.deleteByQuery("Product", "Category = 'Tools'", null, null, false, null, "Tools")));
+        assertEquals(1, ((Map<String, Object>) result.get("data")).get("deleted"));
+        result = call(spaceAPIController.deleteById("Product", "doc1", "Hardware"));
+        assertEquals("Hardware", ((Map<String, Object>) ((Map<String, Object>) result.get("data")).get("properties")).get("Category"));
+        assertEquals(0, gigaSpace.count(new SpaceDocument("Product")));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testMetrics() throws Exception {
+        ControllerUtils.metrics.clear();
+        call(spaceAPIController.post("Product", null, null, body("{\"CatalogNumber\":\"doc1\", \"Name\":\"Anvil1\"}")));
+        call(spaceAPIController.getById("Product", "doc1", null, null));
+        call(spaceAPIController.getById("Product", "doc1", null, null));
+        //requests to types which do not exist do not add histograms of their own
+        for (String type : new String[]{"IDontExist1", "IDontExist2", "IDontExist3"}) {
+            try {
+                call(spaceAPIController.getById(type, "doc1", null, null));
+                fail("Reading a type which does not exist should cause TypeNotFoundException");
+            } catch (TypeNotFoundException e) {
+                //This is the right behavior
+            }
+        }
+
+        Map<String, Map<String, Object>> histograms = new HashMap<String, Map<String, Object>>();
+        for (Map<String, Object> histogram : (List<Map<String, Object>>) ((Map<String, Object>) spaceAPIController.metrics(null, null)).get("data")) {
+            histograms.put(histogram.get("endpoint") + "/" + histogram.get("type") + "/" + histogram.get("phase"), histogram);
+        }
+        assertEquals(2L, histograms.get("getById/Product/total").get("count"));
+        assertEquals(2L, histograms.get("getById/Product/space").get("count"));
+        assertEquals(2L, histograms.get("getById/Product/serialize").get("count"));
+        assertEquals(1L, histograms.get("post/Product/parse").get("count"));
+        assertEquals(1L, histograms.get("post/Product/space").get("count"));
+        assertEquals(3L, histograms.get("getById/" + RequestMetrics.UNKNOWN_TYPE + "/total").get("count"));
+        for (String key : histograms.keySet()) {
+            Assert.assertFalse(key, key.contains("IDontExist"));
+        }
+        Map<String, Object> total = histograms.get("getById/Product/total");
+        Assert.assertTrue((Double) total.get("p50") <= (Double) total.get("p99"));
+        Assert.assertTrue((Double) total.get("p999") <= (Double) total.get("max"));
+
+        String prometheus = ((RequestMetrics) spaceAPIController.metrics("prometheus", null)).toPrometheus();
+        Assert.assertTrue(prometheus.contains("xap_rest_request_duration_seconds_count{endpoint=\"getById\",type=\"Product\",phase=\"total\"} 2\n"));
+        Assert.assertTrue(spaceAPIController.metrics(null, "text/plain;version=0.0.4;q=0.3,*/*;q=0.1") instanceof RequestMetrics);
+        Assert.assertTrue(spaceAPIController.metrics(null, "*/*") instanceof Map);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSlowOperations() throws Exception {
+        spaceAPIController.setSlowOperationThreshold(0);
+        spaceAPIController.setSlowOperationLogSize(2);
+        try {
+            call(spaceAPIController.post("Product", null, null, body("[{\"CatalogNumber\":\"doc1\", \"Name\":\"Anvil1\"}, {\"CatalogNumber\":\"doc2\", \"Name\":\"Anvil2\"}]")));
+            call(spaceAPIController.count("Product", "", null));
+            call(spaceAPIController.getByQuery("Product", "Name like 'Anvil%'", 5, null, null, null));
+
+            Map<String, Object> data = (Map<String, Object>) spaceAPIController.slowLog().get("data");
+            assertEquals(3L, data.get("logged"));
+            List<Map<String, Object>> operations = (List<Map<String, Object>>) data.get("operations");
+            assertEquals(2, operations.size());
+            Map<String, Object> operation = operations.get(0);
+            assertEquals("getByQuery", operation.get("endpoint"));
+            assertEquals("Product", operation.get("type"));
+            assertEquals("Name like 'Anvil%'", operation.get("query"));
+            assertEquals(5, operation.get("max"));
+            assertEquals(2, operation.get("documents"));
+            Assert.assertTrue(((Map<String, Object>) operation.get("phases")).containsKey("space"));
+            assertEquals("count", operations.get(1).get("endpoint"));
+
+            spaceAPIController.setSlowOperationThreshold(-1);
+            call(spaceAPIController.count("Product", "", null));
+            assertEquals(3L, ((Map<String, Object>) spaceAPIController.slowLog().get("data")).get("logged"));
+        } finally {
+            spaceAPIController.setSlowOperationThreshold(1000);
+            spaceAPIController.setSlowOperationLogSize(100);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object readName(String id) throws Exception {
+        Map<String, Object> result = toMap(call(spaceAPIController.getById("Product", id, null, null)));
+        return ((Map<String, Object>) ((Map<String, Object>) result.get("data")).get("properties")).get("Name");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testLocalProxies() throws Exception {
+        String content = "[{\"CatalogNumber\":\"doc1\", \"Category\":\"Hardware\"}, {\"CatalogNumber\":\"doc2\", \"Category\":\"Tools\"}]";
+        call(spaceAPIController.post("Product", null, null, body(content)));
+        try {
+            spaceAPIController.setLocalCacheTypes("Product");
+            Map<String, Object> result = call(spaceAPIController.getById("Product", "doc2", null, null));
+            assertEquals("doc2", ((Map<String, Object>) toMap(result.get("data")).get("properties")).get("CatalogNumber"));
+
+            //the view holds only the entries matching its query
+            spaceAPIController.setLocalViews("Product:Category = 'Hardware'");
+            result = toMap(call(spaceAPIController.getByQuery("Product", "", null, null, null, null)));
+            assertEquals(1, ((List<Object>) result.get("data")).size());
+            assertEquals(1, call(spaceAPIController.count("Product", null, null)).get("data"));
+            assertEquals(2, ((Map<String, Object>) call(spaceAPIController.count("Product", null, true)).get("data")).get("count"));
+        } finally {
+            spaceAPIController.setLocalCacheTypes("");
+            spaceAPIController.setLocalViews("");
+        }
+        assertEquals(2, call(spaceAPIController.count("Product", null, null)).get("data"));
+    }
+
     @Test
     public void testPost() throws Exception {
         //write first doc
@@ -411,12 +991,12 @@ public class SpaceAPIControllerTest {
         //test writemultiple
         String content = "[{\"CatalogNumber\":\"doc1\", \"Category\":\"Hardware\", \"Name\":\"Anvil1\", \"nested\": {\"nestedVar1\":\"nestedValue1\"}}, {\"CatalogNumber\":\"doc2\", \"Category\":\"Hardware\", \"Name\":\"Anvil2\"}]";
 
-        Map<String, Object> postResult = spaceAPIController.post("Product", content);
+        Map<String, Object> postResult = call(spaceAPIController.post("Product", null, null, body(content))).getBody();
         assertEquals("success", postResult.get("status"));
 
         assertEquals(2, gigaSpace.count(null));
 
-        Map<String, Object> countResult = spaceAPIController.count("Product");
+        Map<String, Object> countResult = call(spaceAPIController.count("Product", null, null));
         assertEquals("success", countResult.get("status"));
         assertEquals(2, countResult.get("data"));
 
@@ -435,7 +1015,7 @@ public class SpaceAPIControllerTest {
 
         content = "[{\"CatalogNumber\":\"doc1\", \"Category\":\"Hardware\", \"Name\":\"Anvil1new\", \"nested\": {\"nestedVar1\":\"nestedValue1new\"}}, {\"CatalogNumber\":\"doc2\", \"Category\":\"Hardware\", \"Name\":\"Anvil2new\"}]";
         try{
-            Map<String, Object> result = spaceAPIController.post("Product", content);
+            Map<String, Object> result = call(spaceAPIController.post("Product", null, null, body(content))).getBody();
             assertEquals("success", result.get("status"));
         }catch(Exception e){
             fail("An action should not cause an exception but it did");
@@ -454,7 +1034,7 @@ public class SpaceAPIControllerTest {
         pojo2.setVal(123L);
 
         content = "[{\"id\":\"1\", \"val\":\"123\"}]";
-        Map<String, Object> result = spaceAPIController.post(Pojo2.class.getName(), content);
+        Map<String, Object> result = call(spaceAPIController.post(Pojo2.class.getName(), null, null, body(content))).getBody();
         assertEquals("success", result.get("status"));
 
         SpaceDocument docresult = gigaSpace.readById(new IdQuery<SpaceDocument>(Pojo2.class.getName(), 1,QueryResultType.DOCUMENT));
@@ -466,7 +1046,7 @@ public class SpaceAPIControllerTest {
         pojo3.setVal(123L);
 
         content = "[{\"id\":\"1\", \"val\":\"123\"}]";
-        result = spaceAPIController.post(Pojo3.class.getName(), content);
+        result = call(spaceAPIController.post(Pojo3.class.getName(), null, null, body(content))).getBody();
         assertEquals("success", result.get("status"));
 
         SpaceDocument docresult2 = gigaSpace.readById(new IdQuery<SpaceDocument>(Pojo3.class.getName(), 1F,QueryResultType.DOCUMENT));
@@ -474,7 +1054,223 @@ public class SpaceAPIControllerTest {
     }
 
     @Test
-    public void testUpdate() throws MissingServletRequestParameterException, HttpMediaTypeNotAcceptableException, NoSuchRequestHandlingMethodException, TypeNotFoundException{
+    @SuppressWarnings("unchecked")
+    public void testPostInBatches() throws Exception {
+        spaceAPIController.setWriteBatchSize(2);
+        try {
+            StringBuilder content = new StringBuilder("[");
+            for (int i = 0; i < 5; i++) {
+                if (i > 0) {
+                    content.append(",");
+                }
+                content.append("{\"CatalogNumber\":\"doc").append(i).append("\", \"Category\":\"Hardware\"}");
+            }
+            content.append("]");
+            Map<String, Object> result = toMap(call(spaceAPIController.post("Product", null, null, body(content.toString()))).getBody());
+            assertEquals("success", result.get("status"));
+            assertEquals(5, gigaSpace.count(null));
+            Map<String, Object> data = (Map<String, Object>) result.get("data");
+            assertEquals(5, data.get("written"));
+            ArrayList<Map<String, Object>> chunks = (ArrayList<Map<String, Object>>) data.get("chunks");
+            assertEquals(3, chunks.size());
+            for (int i = 0; i < chunks.size(); i++) {
+                assertEquals(i, chunks.get(i).get("chunk"));
+                assertEquals(i * 2, chunks.get(i).get("offset"));
+                assertEquals("success", chunks.get(i).get("status"));
+            }
+            assertEquals(1, chunks.get(2).get("documents"));
+
+            //a single object is written as is
+            result = call(spaceAPIController.post("Product", null, null, body("{\"CatalogNumber\":\"doc5\", \"Category\":\"Hardware\"}"))).getBody();
+            assertEquals("success", result.get("status"));
+            assertEquals(6, gigaSpace.count(null));
+        } finally {
+            spaceAPIController.setWriteBatchSize(1000);
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testPostInBatchesWithParseError() throws Exception {
+        spaceAPIController.setWriteBatchSize(2);
+        try {
+            String content = "[{\"CatalogNumber\":\"doc1\"}, {\"CatalogNumber\":\"doc2\"}, {\"CatalogNumber\":\"doc3\"}, {\"CatalogNumber\": oops}]";
+            try {
+                call(spaceAPIController.post("Product", null, null, body(content)));
+                fail("Should throw PartialWriteException");
+            } catch (PartialWriteException e) {
+                //the first chunk was written, the second one failed to be read
+                assertEquals(2, gigaSpace.count(null));
+                List<ChunkResult> chunks = e.getChunks();
+                assertEquals(2, chunks.size());
+                assertEquals("success", chunks.get(0).getStatus());
+                assertEquals("error", chunks.get(1).getStatus());
+                assertEquals(2, chunks.get(1).getOffset());
+            }
+        } finally {
+            spaceAPIController.setWriteBatchSize(1000);
+        }
+    }
+
+    @Test(expected = RestException.class)
+    public void testPostEmptyBody() throws Exception {
+        call(spaceAPIController.post("Product", null, null, body("")));
+    }
+
+    @Test
+    public void testPostOneWay() throws Exception {
+        String content = "[{\"CatalogNumber\":\"doc1\", \"Category\":\"Hardware\"}, {\"CatalogNumber\":\"doc2\", \"Category\":\"Hardware\"}]";
+        long dispatched = ControllerUtils.writeStats.getOnewayDispatched();
+        ResponseEntity<Map<String, Object>> response = call(spaceAPIController.post("Product", "oneway", null, body(content)));
+        assertEquals(HttpStatus.ACCEPTED, response.getStatusCode());
+        assertEquals("success", response.getBody().get("status"));
+        assertEquals(dispatched + 2, ControllerUtils.writeStats.getOnewayDispatched());
+
+        //the header selects the mode as well
+        response = call(spaceAPIController.post("Product", null, "ONEWAY", body(content)));
+        assertEquals(HttpStatus.ACCEPTED, response.getStatusCode());
+        assertEquals(dispatched + 4, ControllerUtils.writeStats.getOnewayDispatched());
+        assertEquals(HttpStatus.OK, call(spaceAPIController.post("Product", "sync", null, body(content))).getStatusCode());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testPostBuffered() throws Exception {
+        spaceAPIController.setBufferFlushSize(2);
+        try {
+            ResponseEntity<Map<String, Object>> response = call(spaceAPIController.post("Product", "buffered", null,
+                    body("{\"CatalogNumber\":\"doc1\", \"Category\":\"Hardware\"}")));
+            assertEquals(HttpStatus.ACCEPTED, response.getStatusCode());
+            assertEquals(1, ((Map<String, Object>) response.getBody().get("data")).get("buffered"));
+
+            //the second document fills a batch, which is flushed without waiting for the flush interval
+            response = call(spaceAPIController.post("Product", null, "buffered",
+                    body("{\"CatalogNumber\":\"doc2\", \"Category\":\"Hardware\"}")));
+            assertEquals(HttpStatus.ACCEPTED, response.getStatusCode());
+            long deadline = System.currentTimeMillis() + 5000;
+            while (gigaSpace.count(null) < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertEquals(2, gigaSpace.count(null));
+        } finally {
+            spaceAPIController.setBufferFlushSize(1000);
+        }
+    }
+
+    @Test(expected = PayloadTooLargeException.class)
+    public void testPostBufferedLargerThanCapacity() throws Exception {
+        spaceAPIController.setBufferCapacity(1);
+        try {
+            call(spaceAPIController.post("Product", "buffered", null,
+                    body("[{\"CatalogNumber\":\"doc1\"}, {\"CatalogNumber\":\"doc2\"}]")));
+        } finally {
+            spaceAPIController.setBufferCapacity(10000);
+        }
+    }
+
+    @Test
+    public void testPostCompletedWhileReadingBody() throws Exception {
+        final CountDownLatch reading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger readsAfterRelease = new AtomicInteger();
+        //the first document, then the client stalls in the middle of the second one
+        InputStream stalled = new InputStream() {
+            private final InputStream rest = body("{\"CatalogNumber\":\"doc2\", ");
+
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (release.getCount() == 0) {
+                    readsAfterRelease.incrementAndGet();
+                    return rest.read(b, off, len);
+                }
+                reading.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+                return rest.read(b, off, len);
+            }
+        };
+        InputStream requestBody = new SequenceInputStream(body("[{\"CatalogNumber\":\"doc1\", \"Category\":\"Hardware\"}, "), stalled);
+
+        final MockHttpServletRequest request = new MockHttpServletRequest("POST", "/Product");
+        request.setAsyncSupported(true);
+        WebAsyncManager asyncManager = WebAsyncUtils.getAsyncManager(request);
+        asyncManager.setAsyncWebRequest(new StandardServletAsyncWebRequest(request, new MockHttpServletResponse()));
+        asyncManager.startCallableProcessing(spaceAPIController.post("Product", null, null, requestBody));
+        //async_timeout does not apply to a post
+        assertEquals(0, request.getAsyncContext().getTimeout());
+        assertTrue(reading.await(10, TimeUnit.SECONDS));
+
+        //the container completes the request while the body is being read, e.g. because the client went away
+        Thread completion = new Thread() {
+            @Override
+            public void run() {
+                request.getAsyncContext().complete();
+            }
+        };
+        completion.start();
+        long deadline = System.currentTimeMillis() + 10000;
+        while (completion.getState() != Thread.State.BLOCKED && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        //the completion waits for the read in progress
+        assertEquals(Thread.State.BLOCKED, completion.getState());
+        release.countDown();
+        completion.join(10000);
+        assertFalse(completion.isAlive());
+
+        deadline = System.currentTimeMillis() + 10000;
+        while (!asyncManager.hasConcurrentResult() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        //the rest of the body, which may belong to another request by now, is not read
+        assertTrue(asyncManager.getConcurrentResult() instanceof HttpMessageNotReadableException);
+        assertEquals(0, readsAfterRelease.get());
+        assertEquals(0, gigaSpace.count(null));
+    }
+
+    @Test(expected = RestException.class)
+    public void testPostUnsupportedWriteMode() throws Exception {
+        call(spaceAPIController.post("Product", "later", null, body("{\"CatalogNumber\":\"doc1\"}")));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testPatch() throws Exception {
+        String content = "[{\"CatalogNumber\":\"doc1\", \"Category\":\"Hardware\", \"Name\":\"Anvil1\", \"Stock\":10}, {\"CatalogNumber\":\"doc2\", \"Category\":\"Hardware\", \"Name\":\"Anvil2\", \"Stock\":5}]";
+        call(spaceAPIController.post("Product", null, null, body(content)));
+
+        Map<String, Object> result = call(spaceAPIController.patchById("Product", "doc1", "{\"set\":{\"Name\":\"Anvil1new\"}, \"increment\":{\"Stock\":-3}}"));
+        assertEquals("success", result.get("status"));
+        assertEquals(1, ((Map<String, Object>) result.get("data")).get("changed"));
+        SpaceDocument doc1 = gigaSpace.readById(new IdQuery<SpaceDocument>("Product", "doc1", QueryResultType.DOCUMENT));
+        assertEquals("Anvil1new", doc1.getProperty("Name"));
+        assertEquals(7, doc1.getProperty("Stock"));
+
+        result = call(spaceAPIController.patchByQuery("Product", "Category = 'Hardware'", "{\"increment\":{\"Stock\":1}}"));
+        assertEquals(2, ((Map<String, Object>) result.get("data")).get("changed"));
+        SpaceDocument doc2 = gigaSpace.readById(new IdQuery<SpaceDocument>("Product", "doc2", QueryResultType.DOCUMENT));
+        assertEquals(6, doc2.getProperty("Stock"));
+
+        result = call(spaceAPIController.patchById("Product", "doc3", "{\"set\":{\"Name\":\"Anvil3\"}}"));
+        assertEquals(0, ((Map<String, Object>) result.get("data")).get("changed"));
+    }
+
+    @Test(expected = RestException.class)
+    public void testPatchUnsupportedOperation() throws Exception {
+        call(spaceAPIController.patchById("Product", "doc1", "{\"multiply\":{\"Stock\":2}}"));
+    }
+
+    @Test
+    public void testUpdate() throws Exception {
         Map<String, Object> properties1 = new HashMap<String, Object>();
         properties1.put("CatalogNumber", "doc1");
         properties1.put("Category", "Hardware");
@@ -490,7 +1286,7 @@ public class SpaceAPIControllerTest {
 
         String content = "[{\"CatalogNumber\":\"doc1\", \"Category\":\"Hardware\", \"Name\":\"Anvil1\", \"nested\": {\"nestedVar1\":\"nestedValue1\"}}, {\"CatalogNumber\":\"doc2\", \"Category\":\"Hardware\", \"Name\":\"Anvil2\"}]";
 
-        Map<String, Object> result = spaceAPIController.post("Product", content);
+        Map<String, Object> result = call(spaceAPIController.post("Product", null, null, body(content))).getBody();
         assertEquals("success", result.get("status"));
 
         assertEquals(2, gigaSpace.count(null));
@@ -503,7 +1299,7 @@ public class SpaceAPIControllerTest {
         properties2.put("Name", "Anvil2new");
 
         content = "[{\"CatalogNumber\":\"doc1\", \"Category\":\"Hardware\", \"Name\":\"Anvil1new\", \"nested\": {\"nestedVar1\":\"nestedValue1new\"}}, {\"CatalogNumber\":\"doc2\", \"Category\":\"Hardware\", \"Name\":\"Anvil2new\"}]";
-        result = spaceAPIController.post("Product", content);
+        result = call(spaceAPIController.post("Product", null, null, body(content))).getBody();
         assertEquals("success", result.get("status"));
 
         assertEquals(2, gigaSpace.count(null));
@@ -520,7 +1316,7 @@ public class SpaceAPIControllerTest {
         pojo2.setVal(123L);
 
         content = "[{\"id\":\"1\", \"val\":\"123\"}]";
-        result = spaceAPIController.post(Pojo2.class.getName(), content);
+        result = call(spaceAPIController.post(Pojo2.class.getName(), null, null, body(content))).getBody();
         assertEquals("success", result.get("status"));
 
         SpaceDocument docresult = gigaSpace.readById(new IdQuery<SpaceDocument>(Pojo2.class.getName(), 1,QueryResultType.DOCUMENT));
@@ -532,7 +1328,7 @@ public class SpaceAPIControllerTest {
         pojo3.setVal(123L);
 
         content = "[{\"id\":\"1\", \"val\":\"123\"}]";
-        result = spaceAPIController.post(Pojo3.class.getName(), content);
+        result = call(spaceAPIController.post(Pojo3.class.getName(), null, null, body(content))).getBody();
         assertEquals("success", result.get("status"));
 
         SpaceDocument docresult2 = gigaSpace.readById(new IdQuery<SpaceDocument>(Pojo3.class.getName(), 1F,QueryResultType.DOCUMENT));
@@ -541,7 +1337,7 @@ public class SpaceAPIControllerTest {
 
 
     @Test
-    public void testEnum() throws ObjectNotFoundException, TypeNotFoundException{
+    public void testEnum() throws Exception {
 
         //write first doc
         SpaceDocument document = new SpaceDocument("Person")
@@ -555,15 +1351,15 @@ public class SpaceAPIControllerTest {
             .setProperty("Job", Job.FARMER);
         gigaSpace.write(document2);
 
-        Map<String, Object> postResult = spaceAPIController.post("Person", "{\"ID\":\"333\", \"Job\":\"WORKER\"}");
+        Map<String, Object> postResult = call(spaceAPIController.post("Person", null, null, body("{\"ID\":\"333\", \"Job\":\"WORKER\"}"))).getBody();
         assertEquals("success", postResult.get("status"));
 
-        Map<String, Object> result = spaceAPIController.getByQuery("Person", "Job='DOCTOR'", Integer.MAX_VALUE);
+        Map<String, Object> result = toMap(call(spaceAPIController.getByQuery("Person", "Job='DOCTOR'", Integer.MAX_VALUE, null, null, null)));
         assertEquals("success", result.get("status"));
         ArrayList<Map<String, Map<String, Object>>> resultData = (ArrayList<Map<String, Map<String, Object>>>) result.get("data");
         compareObjects(document.getProperties(), resultData.get(0).get("properties"));
 
-        result = spaceAPIController.getByQuery("Person","Job='WORKER'", Integer.MAX_VALUE);
+        result = toMap(call(spaceAPIController.getByQuery("Person","Job='WORKER'", Integer.MAX_VALUE, null, null, null)));
         assertEquals("success", result.get("status"));
         resultData = (ArrayList<Map<String, Map<String, Object>>>) result.get("data");
         Map<String, Object> expected = new HashMap<String, Object>();
@@ -575,43 +1371,48 @@ public class SpaceAPIControllerTest {
     @Test(expected=TypeNotFoundException.class) 
     public void testTypeNotRegisteredOnPut() throws Exception {
         String content = "[{\"id\":\"1\", \"val\":\"123\"}]";
-        spaceAPIController.post(UnregisteredPojo.class.getName(), content);
+        call(spaceAPIController.post(UnregisteredPojo.class.getName(), null, null, body(content)));
     }
 
     @Test(expected=TypeNotFoundException.class) 
     public void testTypeNotRegisteredOnPost() throws Exception {
         String content = "[{\"id\":\"1\", \"val\":\"123\"}]";
-        spaceAPIController.post(UnregisteredPojo.class.getName(), content);
+        call(spaceAPIController.post(UnregisteredPojo.class.getName(), null, null, body(content)));
     }
     
     @Test(expected=TypeNotFoundException.class) 
-    public void testTypeNotFoundOnGetByQuery() throws ObjectNotFoundException {
-        spaceAPIController.getByQuery("IDontExist","id = 123", 1);
+    public void testTypeNotFoundOnGetByQuery() throws Exception {
+        call(spaceAPIController.getByQuery("IDontExist","id = 123", 1, null, null, null));
     }
 
     @Test(expected=TypeNotFoundException.class) 
-    public void testTypeNotFoundOnGetById() throws ObjectNotFoundException {
-        spaceAPIController.getById("IDontExist", "123");
+    public void testTypeNotFoundOnGetById() throws Exception {
+        call(spaceAPIController.getById("IDontExist", "123", null, null));
     }
     
     @Test(expected=TypeNotFoundException.class) 
-    public void testTypeNotFoundOnGetByType() throws ObjectNotFoundException {
-        spaceAPIController.getByQuery("IDontExist", "", 1);
+    public void testTypeNotFoundOnGetByType() throws Exception {
+        call(spaceAPIController.getByQuery("IDontExist", "", 1, null, null, null));
     }
 
     @Test(expected=TypeNotFoundException.class) 
-    public void testTypeNotFoundOnDeleteById() throws ObjectNotFoundException {
-        spaceAPIController.deleteById("IDontExist", "123");
+    public void testTypeNotFoundOnDeleteById() throws Exception {
+        call(spaceAPIController.deleteById("IDontExist", "123", null));
     }
 
     @Test(expected=TypeNotFoundException.class) 
-    public void testTypeNotFoundOnDeleteByQuery() throws ObjectNotFoundException {
-        spaceAPIController.deleteByQuery("IDontExist", "id = 123", 1);
+    public void testTypeNotFoundOnDeleteByQuery() throws Exception {
+        call(spaceAPIController.deleteByQuery("IDontExist", "id = 123", 1, null, null, null, null));
+    }
+
+    @Test(expected=TypeNotFoundException.class)
+    public void testTypeNotFoundOnDeleteByQueryInBatches() throws Exception {
+        call(spaceAPIController.deleteByQuery("IDontExist", "id = 123", null, null, null, 2, null));
     }
 
     @Test(expected=TypeNotFoundException.class) 
-    public void testTypeNotFoundOnDeleteByType() throws ObjectNotFoundException {
-        spaceAPIController.deleteByQuery("IDontExist", "", 1);
+    public void testTypeNotFoundOnDeleteByType() throws Exception {
+        call(spaceAPIController.deleteByQuery("IDontExist", "", 1, null, null, null, null));
     }
     
     private static void registerProductType(GigaSpace gigaspace) {
@@ -632,6 +1433,27 @@ public class SpaceAPIControllerTest {
         gigaspace.getTypeManager().registerTypeDescriptor(typeDescriptor);
     }
 
+    /**
+     * Selects the space of the requests made by the current thread, as {@link SpaceSelectionFilter} does
+     */
+    private static void selectSpace(String name) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setAttribute(SpaceSelectionFilter.SPACE_ATTRIBUTE, name);
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+    }
+
+    private static InputStream body(String content) {
+        return new ByteArrayInputStream(content.getBytes(Charset.forName("UTF-8")));
+    }
+
+    private static <T> T call(WebAsyncTask<T> task) throws Exception {
+        return task.getCallable().call();
+    }
+
+    private static Map<String, Object> toMap(Object response) throws java.io.IOException {
+        return ControllerUtils.mapper.readValue(ControllerUtils.mapper.writeValueAsString(response), LinkedHashMap.class);
+    }
+
     private void compareObjects(Object m1, Object m2){
         try {
             assertEquals(ControllerUtils.mapper.readValue(ControllerUtils.mapper.writeValueAsString(m1), LinkedHashMap.class), ControllerUtils.mapper.readValue(ControllerUtils.mapper.writeValueAsString(m2), LinkedHashMap.class));
@@ -0,0 +1,97 @@
+package org.openspaces.rest.tests;
+
+import org.junit.Test;
+import org.openspaces.rest.utils.SpaceSelectionFilter;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.DispatcherType;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+
+public class SpaceSelectionFilterTest {
+
+    private final SpaceSelectionFilter filter = new SpaceSelectionFilter();
+
+    @Test
+    public void testSpaceHeader() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/Product/1");
+        request.addHeader(SpaceSelectionFilter.SPACE_HEADER, "mySpace");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(request, response, chain);
+
+        assertEquals("mySpace", request.getAttribute(SpaceSelectionFilter.SPACE_ATTRIBUTE));
+        assertSame(request, chain.getRequest());
+        assertNull(response.getForwardedUrl());
+    }
+
+    @Test
+    public void testNoSelection() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/Product/1");
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+        assertNull(request.getAttribute(SpaceSelectionFilter.SPACE_ATTRIBUTE));
+        assertSame(request, chain.getRequest());
+    }
+
+    @Test
+    public void testSpacePath() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/rest/_space/mySpace/Product/1");
+        request.setContextPath("/rest");
+        request.setQueryString("routing=1");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(request, response, chain);
+
+        assertEquals("mySpace", request.getAttribute(SpaceSelectionFilter.SPACE_ATTRIBUTE));
+        assertEquals("/Product/1", response.getForwardedUrl());
+        //the forward dispatches the request, not the rest of the chain
+        assertNull(chain.getRequest());
+    }
+
+    @Test
+    public void testSpacePathWithoutType() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/_space/mySpace");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain());
+
+        assertEquals("mySpace", request.getAttribute(SpaceSelectionFilter.SPACE_ATTRIBUTE));
+        assertEquals("/", response.getForwardedUrl());
+    }
+
+    @Test
+    public void testAsyncDispatchToOriginalPath() throws Exception {
+        //the request went asynchronous under the forward, and the container dispatches it to the path the client sent
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/_space/mySpace/Product/1");
+        request.setDispatcherType(DispatcherType.ASYNC);
+        request.setAttribute(SpaceSelectionFilter.SPACE_ATTRIBUTE, "mySpace");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(request, response, chain);
+
+        assertEquals("mySpace", request.getAttribute(SpaceSelectionFilter.SPACE_ATTRIBUTE));
+        assertEquals("/Product/1", response.getForwardedUrl());
+        assertNull(chain.getRequest());
+    }
+
+    @Test
+    public void testAsyncDispatchToForwardedPath() throws Exception {
+        //the request went asynchronous under the forward, and the container dispatches it to the forwarded path
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/Product/1");
+        request.setDispatcherType(DispatcherType.ASYNC);
+        request.setAttribute(SpaceSelectionFilter.SPACE_ATTRIBUTE, "mySpace");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(request, response, chain);
+
+        assertEquals("mySpace", request.getAttribute(SpaceSelectionFilter.SPACE_ATTRIBUTE));
+        assertSame(request, chain.getRequest());
+        assertNull(response.getForwardedUrl());
+    }
+}
@@ -0,0 +1,118 @@
+package org.openspaces.rest.tests;
+
+import com.gigaspaces.metadata.SpaceTypeDescriptorBuilder;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openspaces.core.GigaSpace;
+import org.openspaces.core.GigaSpaceConfigurer;
+import org.openspaces.core.space.UrlSpaceConfigurer;
+import org.openspaces.rest.exceptions.TypeNotFoundException;
+import org.openspaces.rest.utils.TypeDescriptorCache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+
+public class TypeDescriptorCacheTest {
+
+    private static final String SPACENAME = "embeddedTypeCacheTestSpace";
+    private static final String OTHER_SPACENAME = "embeddedOtherTypeCacheTestSpace";
+
+    private static GigaSpace gigaSpace;
+    private static GigaSpace otherGigaSpace;
+
+    //type descriptors can not be unregistered, so each test registers types of its own
+    private static int typeCounter;
+
+    private final TypeDescriptorCache cache = new TypeDescriptorCache();
+
+    @BeforeClass
+    public static void beforeClass() {
+        gigaSpace = new GigaSpaceConfigurer(new UrlSpaceConfigurer("/./" + SPACENAME + "?groups=openspaces-rest")).gigaSpace();
+        otherGigaSpace = new GigaSpaceConfigurer(new UrlSpaceConfigurer("/./" + OTHER_SPACENAME + "?groups=openspaces-rest")).gigaSpace();
+    }
+
+    @Test
+    public void testCachedWithinTtl() throws Exception {
+        String type = registerType(gigaSpace);
+        TypeDescriptorCache.CachedType cachedType = cache.get(gigaSpace, type);
+        assertNotNull(cachedType);
+        assertEquals("CatalogNumber", cachedType.getDescriptor().getIdPropertyName());
+        assertNotNull(cachedType.getIdConverter());
+        assertSame(cachedType, cache.get(gigaSpace, type));
+    }
+
+    @Test
+    public void testReloadedAfterTtl() throws Exception {
+        cache.setTtl(0);
+        String type = registerType(gigaSpace);
+        TypeDescriptorCache.CachedType cachedType = cache.get(gigaSpace, type);
+        Thread.sleep(10);
+        TypeDescriptorCache.CachedType reloaded = cache.get(gigaSpace, type);
+        assertNotSame(cachedType, reloaded);
+        assertEquals(type, reloaded.getDescriptor().getTypeName());
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        String type = registerType(gigaSpace);
+        TypeDescriptorCache.CachedType cachedType = cache.get(gigaSpace, type);
+        cache.invalidate(gigaSpace, type);
+        assertNotSame(cachedType, cache.get(gigaSpace, type));
+
+        cachedType = cache.get(gigaSpace, type);
+        cache.clear();
+        assertNotSame(cachedType, cache.get(gigaSpace, type));
+    }
+
+    @Test
+    public void testTypeNotFoundNotCached() throws Exception {
+        String type = nextTypeName();
+        assertNull(cache.get(gigaSpace, type));
+        try {
+            cache.getRequired(gigaSpace, type);
+            fail("The type is not registered yet");
+        } catch (TypeNotFoundException e) {
+            //This is the right behavior
+        }
+
+        //registered by another client, without going through the gateway
+        registerType(gigaSpace, type);
+        assertNotNull(cache.get(gigaSpace, type));
+        assertNotNull(cache.getRequired(gigaSpace, type));
+    }
+
+    @Test
+    public void testKeyedBySpace() throws Exception {
+        String type = registerType(gigaSpace);
+        assertNotNull(cache.get(gigaSpace, type));
+        assertNull(cache.get(otherGigaSpace, type));
+
+        registerType(otherGigaSpace, type);
+        TypeDescriptorCache.CachedType cachedType = cache.get(gigaSpace, type);
+        TypeDescriptorCache.CachedType otherCachedType = cache.get(otherGigaSpace, type);
+        assertNotSame(cachedType, otherCachedType);
+
+        cache.invalidate(otherGigaSpace, type);
+        assertSame(cachedType, cache.get(gigaSpace, type));
+    }
+
+    private static synchronized String nextTypeName() {
+        return "CachedType" + typeCounter++;
+    }
+
+    private static String registerType(GigaSpace gigaSpace) {
+        return registerType(gigaSpace, nextTypeName());
+    }
+
+    private static String registerType(GigaSpace gigaSpace, String type) {
+        gigaSpace.getTypeManager().registerTypeDescriptor(new SpaceTypeDescriptorBuilder(type)
+                .idProperty("CatalogNumber")
+                .create());
+        return type;
+    }
+}
@@ -0,0 +1,128 @@
+package org.openspaces.rest.tests;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openspaces.core.GigaSpace;
+import org.openspaces.core.space.CannotFindSpaceException;
+import org.openspaces.core.space.UrlSpaceConfigurer;
+import org.openspaces.rest.utils.ControllerUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+public class XapConnectionCacheTest {
+
+    private static final String GROUPS = "openspaces-rest";
+    private static final long TIMEOUT = 60 * 1000;
+
+    private final ControllerUtils.XapConnectionCache cache = new ControllerUtils.XapConnectionCache();
+    private final List<UrlSpaceConfigurer> startedSpaces = new ArrayList<UrlSpaceConfigurer>();
+
+    @BeforeClass
+    public static void beforeClass() {
+        ControllerUtils.lookupGroups = GROUPS;
+    }
+
+    @After
+    public void afterTest() throws Exception {
+        cache.shutdown();
+        for (UrlSpaceConfigurer space : startedSpaces) {
+            space.destroy();
+        }
+    }
+
+    @Test
+    public void testReconnectBackoff() throws Exception {
+        String name = "embeddedLateTestSpace";
+        cache.setSpaceNames(name);
+
+        RuntimeException failure = null;
+        try {
+            cache.get(name);
+            fail("The space is not started yet");
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+
+        //the next attempt is not due yet, so the lookup is not repeated
+        long start = System.currentTimeMillis();
+        try {
+            cache.get(name);
+            fail("The connection should not be retried before the backoff");
+        } catch (CannotFindSpaceException e) {
+            assertSame(failure, e.getCause());
+        }
+        assertTrue(System.currentTimeMillis() - start < 400);
+
+        startSpace(name);
+        GigaSpace gigaSpace = connect(name);
+        assertEquals(name, gigaSpace.getSpace().getName());
+        assertSame(gigaSpace, cache.get(name));
+    }
+
+    @Test
+    public void testHealthCheckInvalidation() throws Exception {
+        String name = "embeddedRestartedTestSpace";
+        cache.setSpaceNames(name);
+        cache.setHealthCheckInterval(100);
+
+        UrlSpaceConfigurer space = startSpace(name);
+        GigaSpace gigaSpace = connect(name);
+        assertSame(gigaSpace, cache.get(name));
+
+        //the ping of the health check fails, and the connection is dropped
+        space.destroy();
+        startedSpaces.remove(space);
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (isConnected(name, gigaSpace)) {
+            assertTrue("The connection was not dropped", System.currentTimeMillis() < deadline);
+            Thread.sleep(100);
+        }
+
+        startSpace(name);
+        GigaSpace reconnected = connect(name);
+        assertNotSame(gigaSpace, reconnected);
+        reconnected.getSpace().ping();
+    }
+
+    private boolean isConnected(String name, GigaSpace gigaSpace) {
+        try {
+            return cache.get(name) == gigaSpace;
+        } catch (RuntimeException e) {
+            //dropped, and the space can not be found
+            return false;
+        }
+    }
+
+    private UrlSpaceConfigurer startSpace(String name) {
+        UrlSpaceConfigurer space = new UrlSpaceConfigurer("/./" + name + "?groups=" + GROUPS);
+        space.space();
+        startedSpaces.add(space);
+        return space;
+    }
+
+    /**
+     * Connects once the space was discovered, failed attempts are retried after their backoff
+     */
+    private GigaSpace connect(String name) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (true) {
+            try {
+                return cache.get(name);
+            } catch (RuntimeException e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw e;
+                }
+                Thread.sleep(100);
+            }
+        }
+    }
+}